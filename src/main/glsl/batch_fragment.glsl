@@ -0,0 +1,16 @@
+#version 300 es
+
+precision mediump float;
+
+// Shapes without an image use a white texture, so they get just the color
+uniform sampler2D spriteTexture;
+
+in vec2 vTexCoord;
+in vec4 vColor;
+
+out vec4 fragColor;
+
+void main() {
+
+    fragColor = texture(spriteTexture, vTexCoord) * vColor;
+}
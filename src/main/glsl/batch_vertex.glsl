@@ -0,0 +1,19 @@
+#version 300 es
+
+precision mediump float;
+
+out vec2 vTexCoord;
+out vec4 vColor;
+
+// The vertices are already rotated, scaled and moved when they are batched
+layout (location = 0) in vec2 position;
+layout (location = 1) in vec2 textureCoordinate;
+layout (location = 2) in vec4 color;
+
+void main() {
+
+    gl_Position = vec4(position, 0.0, 1.0);
+
+    vTexCoord = textureCoordinate;
+    vColor = color;
+}
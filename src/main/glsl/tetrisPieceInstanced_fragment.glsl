@@ -0,0 +1,27 @@
+#version 300 es
+
+precision mediump float;
+
+// One row per piece and one column per gray of the texture
+uniform sampler2D palette;
+
+uniform sampler2D pieceTexture;
+
+in vec2 vTexCoord;
+flat in int vPaletteRow;
+in float vOpacity;
+
+out vec4 fragColor;
+
+void main() {
+
+    vec4 mappedColor = texture(pieceTexture, vTexCoord);
+
+    // The texture only has the grays 1.0, 0.8, 0.6, 0.4, 0.2 and 0.0, from the first column of the palette to the last
+    int column = int((1.0 - mappedColor.r) * 5.0 + 0.5);
+    mappedColor = texelFetch(palette, ivec2(column, vPaletteRow), 0);
+
+    mappedColor.a = vOpacity;
+
+    fragColor = mappedColor;
+}
@@ -0,0 +1,29 @@
+#version 300 es
+
+precision mediump float;
+
+// Half of the width and height of a square
+uniform float scaleX;
+uniform float scaleY;
+// Top left and bottom right texture coordinates of the image in its texture
+uniform vec4 textureRegion;
+
+out vec2 vTexCoord;
+flat out int vPaletteRow;
+out float vOpacity;
+
+layout (location = 0) in vec3 position;
+layout (location = 1) in vec2 textureCoordinate;
+// Per square: center x, center y, palette row and opacity
+layout (location = 2) in vec4 square;
+
+void main() {
+
+    vec2 newPosition = vec2(position.x * scaleX, position.y * scaleY) + square.xy;
+
+    gl_Position = vec4(newPosition, position.z, 1.0);
+
+    vTexCoord = mix(textureRegion.xy, textureRegion.zw, textureCoordinate);
+    vPaletteRow = int(square.z + 0.5);
+    vOpacity = square.w;
+}
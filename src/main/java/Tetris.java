@@ -17,6 +17,8 @@ public class Tetris {
         engine.setDesiredFPS(Engine.VSYNC);
         engine.setDesiredTPS(60);
         engine.printFps(false);
+        engine.setMultithreaded(true);
+        engine.setMetricsDumpInterval(0);
     }
 
     public void start() {
@@ -0,0 +1,111 @@
+package bot;
+
+import logic.Piece;
+import logic.TetrisPlayer;
+import logic.World;
+import simulation.Policy;
+
+// A player that searches the best placement for every new piece and moves it there
+// It uses the same actions as a human player through TetrisPlayer. Placements under overhangs are reached by
+// soft dropping until the piece is on the right row and moving it sideways after that
+public class BotPlayer implements Policy {
+
+    private final PlacementSearch search;
+    private Piece plannedPiece;
+    private Placement plan;
+    // How far along the path of the plan the piece is
+    private int pathIndex;
+
+    /**
+     * Create a bot that only looks at the current piece and searches on the calling thread
+     */
+    public BotPlayer() {
+        this(Heuristic.defaultHeuristic(), 1, false, null);
+    }
+
+    /**
+     * @param heuristic Scores the boards
+     * @param lookahead How many pieces are searched, 1 for only the current piece
+     * @param parallel Whether the search is split across threads
+     * @param cache Cache for board scores, or null to score every board
+     */
+    public BotPlayer(Heuristic heuristic, int lookahead, boolean parallel, EvaluationCache cache) {
+        search = new PlacementSearch(heuristic, lookahead, parallel, cache);
+    }
+
+    @Override
+    public void act(World world, TetrisPlayer player) {
+
+        Piece piece = world.getCurrentPiece();
+        if(piece == null)
+            return;
+
+        // Plan once for every new piece
+        if(piece != plannedPiece) {
+            plannedPiece = piece;
+            plan = search.findBestPlacement(world);
+            pathIndex = 0;
+        }
+        if(plan == null)
+            return;
+
+        if(plan.hold) {
+            // The swapped in piece gets a new plan on the next tick
+            player.storePiece();
+            return;
+        }
+
+        // Find the piece on the path. Gravity moves it down between the ticks
+        int[] path = plan.path;
+        int position = stateOf(piece);
+        while(pathIndex < path.length && path[pathIndex] != position) {
+            pathIndex++;
+        }
+        if(pathIndex == path.length) {
+            plannedPiece = null;
+            return;
+        }
+
+        // Move and rotate until the piece has to go down. Once only going down is left, the piece is dropped
+        while(pathIndex < path.length - 1 && !onlyDropsLeft(path, pathIndex)) {
+            int next = path[pathIndex + 1];
+            if(isDrop(path[pathIndex], next)) {
+                // Soft drop until the piece is on the next row
+                player.fallFast(true);
+                return;
+            }
+            if(Reachability.rotationOf(next) != piece.getRotation())
+                player.rotate();
+            else
+                player.move(Reachability.columnOf(next) > Reachability.columnOf(position));
+
+            // The search moves the piece the same way, so this only happens if the board differs from the searched one.
+            // Plan again from where the piece is on the next tick instead of dropping it somewhere that wasn't scored
+            position = stateOf(piece);
+            if(position != next) {
+                plannedPiece = null;
+                return;
+            }
+            pathIndex++;
+        }
+        player.fallFast(false);
+        player.hardDrop();
+    }
+
+    private static int stateOf(Piece piece) {
+        return Reachability.state(piece.getRotation(), piece.getxPos() / World.GRID_SIZE, piece.getyPos() / World.GRID_SIZE);
+    }
+
+    private static boolean isDrop(int from, int to) {
+        return Reachability.rotationOf(from) == Reachability.rotationOf(to) && Reachability.columnOf(from) == Reachability.columnOf(to)
+                && Reachability.rowOf(from) == Reachability.rowOf(to) + 1;
+    }
+
+    private static boolean onlyDropsLeft(int[] path, int index) {
+        for(int i = index; i < path.length - 1; i++) {
+            if(!isDrop(path[i], path[i + 1]))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package bot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// A bounded cache of board scores keyed by the board's Zobrist hash
+// Every hash maps to one slot and a new entry always replaces the old one in its slot
+// It is safe to use from several search threads without locking: the key is stored XORed with the value,
+// so an entry that was torn by a concurrent write simply reads as a miss
+public class EvaluationCache {
+
+    private final long[] checks;
+    private final long[] values;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param sizeBits The cache holds 2^sizeBits entries
+     */
+    public EvaluationCache(int sizeBits) {
+
+        if(sizeBits < 1 || sizeBits > 30)
+            throw new IllegalArgumentException("Size bits have to be between 1 and 30. Size bits given: "+sizeBits);
+
+        checks = new long[1 << sizeBits];
+        values = new long[1 << sizeBits];
+        mask = (1 << sizeBits) - 1;
+    }
+
+    /**
+     * @return Return the cached score of the board or NaN if it isn't cached
+     */
+    public double get(long hash) {
+
+        int slot = slot(hash);
+        long value = values[slot];
+        // An empty slot has the value 0, which is never stored
+        if(value != 0 && (checks[slot] ^ value) == hash) {
+            hits.increment();
+            return Double.longBitsToDouble(value);
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    public void put(long hash, double score) {
+
+        long value = Double.doubleToRawLongBits(score);
+        // Store positive zero as negative zero so that 0 can mark an empty slot
+        if(value == 0)
+            value = Double.doubleToRawLongBits(-0d);
+
+        int slot = slot(hash);
+        long oldValue = values[slot];
+        if(oldValue != 0 && (checks[slot] ^ oldValue) != hash)
+            evictions.increment();
+
+        values[slot] = value;
+        checks[slot] = hash ^ value;
+    }
+
+    public void clear() {
+        for(int i = 0; i < values.length; i++) {
+            values[i] = 0;
+            checks[i] = 0;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCapacity() {
+        return values.length;
+    }
+
+    private int slot(long hash) {
+        // The low bits of the Zobrist keys are as random as the high bits
+        return (int) hash & mask;
+    }
+}
@@ -0,0 +1,73 @@
+package bot;
+
+import logic.World;
+
+// Scores boards by a weighted sum of their features. Higher scores are better
+public class Heuristic {
+
+    private final double aggregateHeightWeight;
+    private final double holeWeight;
+    private final double bumpinessWeight;
+    private final double lineWeight;
+
+    /**
+     * @param aggregateHeightWeight Weight of the sum of all column heights
+     * @param holeWeight Weight of the number of empty squares below the top of their column
+     * @param bumpinessWeight Weight of the sum of height differences between adjacent columns
+     * @param lineWeight Weight of the number of cleared rows
+     */
+    public Heuristic(double aggregateHeightWeight, double holeWeight, double bumpinessWeight, double lineWeight) {
+        this.aggregateHeightWeight = aggregateHeightWeight;
+        this.holeWeight = holeWeight;
+        this.bumpinessWeight = bumpinessWeight;
+        this.lineWeight = lineWeight;
+    }
+
+    /**
+     * @return Return weights that play reasonably well without tuning
+     */
+    public static Heuristic defaultHeuristic() {
+        return new Heuristic(-0.510066, -0.35663, -0.184483, 0.760666);
+    }
+
+    /**
+     * @param rowMasks Occupancy of every row from the bottom
+     * @return Score of the board without the cleared rows
+     */
+    public double evaluateBoard(int[] rowMasks) {
+
+        int aggregateHeight = 0;
+        int holes = 0;
+        int bumpiness = 0;
+        int previousHeight = -1;
+
+        for(int column = 0; column < World.WORLD_WIDTH; column++) {
+            int bit = 1 << column;
+
+            // Find the top of the column
+            int height = rowMasks.length;
+            while(height > 0 && (rowMasks[height - 1] & bit) == 0)
+                height--;
+
+            // Count the empty squares below it
+            for(int row = 0; row < height - 1; row++) {
+                if((rowMasks[row] & bit) == 0)
+                    holes++;
+            }
+
+            aggregateHeight += height;
+            if(previousHeight >= 0)
+                bumpiness += Math.abs(height - previousHeight);
+            previousHeight = height;
+        }
+
+        return aggregateHeightWeight * aggregateHeight + holeWeight * holes + bumpinessWeight * bumpiness;
+    }
+
+    /**
+     * @return Score of clearing the given number of rows
+     */
+    public double evaluateLines(int lines) {
+        return lineWeight * lines;
+    }
+}
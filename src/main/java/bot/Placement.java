@@ -0,0 +1,29 @@
+package bot;
+
+import logic.Piece.PieceType;
+
+// A final resting place of a piece found by the placement search
+public class Placement {
+
+    // Type of the piece that is placed. This is the stored or next piece if hold is used
+    public final PieceType type;
+    public final int rotation;
+    // Column and row of the piece's position
+    public final int column;
+    public final int row;
+    // Whether the current piece has to be swapped with the stored piece first
+    public final boolean hold;
+    public final double score;
+    // Positions of the piece from where it was to the placement, as Reachability states
+    final int[] path;
+
+    protected Placement(PieceType type, int rotation, int column, int row, boolean hold, double score, int[] path) {
+        this.type = type;
+        this.rotation = rotation;
+        this.column = column;
+        this.row = row;
+        this.hold = hold;
+        this.score = score;
+        this.path = path;
+    }
+}
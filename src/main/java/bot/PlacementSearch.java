@@ -0,0 +1,170 @@
+package bot;
+
+import logic.Piece;
+import logic.Piece.PieceType;
+import logic.PieceGenerator;
+import logic.World;
+
+import java.util.stream.IntStream;
+
+// Finds the best final placement for the current piece among every placement it can be moved to, including
+// placements under overhangs that can only be reached by dropping the piece first and moving it after that
+// Following pieces can be searched as well, in which case the first level is spread across all cores
+public class PlacementSearch {
+
+    // Score of a placement that ends the game
+    private static final double GAME_OVER_SCORE = -1e9;
+
+    private final Heuristic heuristic;
+    private final int lookahead;
+    private final boolean parallel;
+    private final EvaluationCache cache;
+
+    /**
+     * @param heuristic Scores the boards
+     * @param lookahead How many pieces are searched, 1 for only the current piece
+     * @param parallel Whether the first level of the search is split across threads
+     * @param cache Cache for the heuristic's board scores, or null to score every board
+     */
+    public PlacementSearch(Heuristic heuristic, int lookahead, boolean parallel, EvaluationCache cache) {
+
+        if(lookahead < 1 || lookahead > PieceGenerator.PREVIEW_SIZE)
+            throw new IllegalArgumentException("Lookahead has to be between 1 and "+PieceGenerator.PREVIEW_SIZE+". Lookahead given: "+lookahead);
+
+        this.heuristic = heuristic;
+        this.lookahead = lookahead;
+        this.parallel = parallel;
+        this.cache = cache;
+    }
+
+    /**
+     * @return Return the best placement for the world's current piece, or null if there is no current piece
+     */
+    public Placement findBestPlacement(World world) {
+
+        Piece piece = world.getCurrentPiece();
+        if(piece == null)
+            return null;
+
+        SearchBoard board = new SearchBoard();
+        board.copyFrom(world.getBoard());
+        int column = piece.getxPos() / World.GRID_SIZE;
+        int row = piece.getyPos() / World.GRID_SIZE;
+
+        PieceType[] pieces = new PieceType[lookahead];
+        pieces[0] = piece.getPieceType();
+        for(int i = 1; i < lookahead; i++) {
+            pieces[i] = world.getNextPieceType(i - 1);
+        }
+        Placement best = searchFirstPiece(board, pieces, piece.getRotation(), column, row, false);
+
+        if(world.canStorePiece()) {
+            // With hold the stored piece is placed instead, or the next piece if nothing is stored yet
+            PieceType[] holdPieces = new PieceType[lookahead];
+            int nextIndex = 0;
+            int holdRow;
+            if(world.getStoredPieceType() != null) {
+                holdPieces[0] = world.getStoredPieceType();
+                holdRow = World.STORED_PIECE_SPAWN_ROW;
+            }
+            else {
+                holdPieces[0] = world.getNextPieceType(nextIndex++);
+                holdRow = World.SPAWN_ROW;
+            }
+            for(int i = 1; i < lookahead; i++) {
+                holdPieces[i] = world.getNextPieceType(nextIndex++);
+            }
+
+            Placement holdBest = searchFirstPiece(board, holdPieces, 0, World.SPAWN_COLUMN, holdRow, true);
+            if(holdBest != null && (best == null || holdBest.score > best.score))
+                best = holdBest;
+        }
+
+        return best;
+    }
+
+    private Placement searchFirstPiece(SearchBoard board, PieceType[] pieces, int startRotation, int startColumn, int startRow, boolean hold) {
+
+        PieceType type = pieces[0];
+        Reachability reachability = new Reachability();
+        reachability.search(board, type, startRotation, startColumn, startRow);
+
+        IntStream candidates = IntStream.range(0, reachability.getPlacementCount());
+        if(parallel && lookahead > 1)
+            candidates = candidates.parallel();
+
+        // Every thread needs its own boards and searches
+        double[] scores = new double[reachability.getPlacementCount()];
+        candidates.forEach(candidate -> {
+            SearchBoard[] boards = new SearchBoard[lookahead];
+            Reachability[] reachabilities = new Reachability[lookahead];
+            for(int i = 0; i < boards.length; i++) {
+                boards[i] = new SearchBoard();
+                if(i > 0)
+                    reachabilities[i] = new Reachability();
+            }
+            scores[candidate] = scorePlacement(board, pieces, 0, boards, reachabilities, reachability.getPlacement(candidate));
+        });
+
+        int bestCandidate = -1;
+        for(int i = 0; i < scores.length; i++) {
+            if(bestCandidate < 0 || scores[i] > scores[bestCandidate])
+                bestCandidate = i;
+        }
+        if(bestCandidate < 0)
+            return null;
+
+        int state = reachability.getPlacement(bestCandidate);
+        return new Placement(type, Reachability.rotationOf(state), Reachability.columnOf(state), Reachability.rowOf(state),
+                hold, scores[bestCandidate], reachability.getPath(state));
+    }
+
+    /**
+     * Place a piece and score the result, searching the following pieces if there are any
+     * @param state Reachable placement of the piece
+     */
+    private double scorePlacement(SearchBoard parent, PieceType[] pieces, int depth, SearchBoard[] boards,
+                                  Reachability[] reachabilities, int state) {
+
+        PieceType type = pieces[depth];
+        SearchBoard board = boards[depth];
+        board.copyFrom(parent);
+        int lines = board.place(type, Reachability.rotationOf(state), Reachability.columnOf(state), Reachability.rowOf(state));
+
+        if(board.isGameOver())
+            return GAME_OVER_SCORE;
+
+        double score = heuristic.evaluateLines(lines);
+        if(depth == pieces.length - 1)
+            return score + evaluateBoard(board);
+
+        // Add the best score of the next piece
+        double bestNext = Double.NEGATIVE_INFINITY;
+        Reachability reachability = reachabilities[depth + 1];
+        reachability.search(board, pieces[depth + 1], 0, World.SPAWN_COLUMN, World.SPAWN_ROW);
+        for(int i = 0; i < reachability.getPlacementCount(); i++) {
+            bestNext = Math.max(bestNext, scorePlacement(board, pieces, depth + 1, boards, reachabilities, reachability.getPlacement(i)));
+        }
+        return bestNext == Double.NEGATIVE_INFINITY ? GAME_OVER_SCORE : score + bestNext;
+    }
+
+    /**
+     * Score the board with the heuristic unless the same board has already been scored
+     */
+    private double evaluateBoard(SearchBoard board) {
+
+        if(cache == null)
+            return heuristic.evaluateBoard(board.rowMasks);
+
+        double score = cache.get(board.hash);
+        if(Double.isNaN(score)) {
+            score = heuristic.evaluateBoard(board.rowMasks);
+            cache.put(board.hash, score);
+        }
+        return score;
+    }
+
+    public EvaluationCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,190 @@
+package bot;
+
+import logic.Piece;
+import logic.Piece.PieceType;
+import logic.World;
+
+import java.util.Arrays;
+
+// Finds every position a piece can reach from its start with the moves of a player: left, right, rotate with the kicks
+// of Piece.rotate() and one square down. Positions are expanded from the highest row down, so the piece is moved as
+// high as possible and the path to a placement only ends with soft drops when there is a reason to drop first
+class Reachability {
+
+    // A piece's position can be outside the board by the offsets of its squares
+    static final int MIN_COLUMN = -2;
+    static final int COLUMN_COUNT = World.WORLD_WIDTH + 4;
+    static final int MIN_ROW = -2;
+    static final int ROW_COUNT = World.PLAYABLE_WORLD_HEIGHT + 5;
+    static final int STATE_COUNT = PieceType.ROTATION_COUNT * ROW_COUNT * COLUMN_COUNT;
+
+    private static final int UNREACHED = -2;
+    private static final int START = -1;
+
+    // The state every state was first reached from
+    private final int[] previous = new int[STATE_COUNT];
+    // States waiting to be expanded. Every row is a queue, so the states of a row are expanded in the order they were found
+    private final int[][] rowQueues = new int[ROW_COUNT][PieceType.ROTATION_COUNT * COLUMN_COUNT];
+    private final int[] queueHeads = new int[ROW_COUNT];
+    private final int[] queueTails = new int[ROW_COUNT];
+    // Placements where the piece can't move down. Rotations with the same squares are only found once
+    private final int[] placements = new int[STATE_COUNT];
+    private int placementCount;
+    private final boolean[] placedShapes = new boolean[STATE_COUNT];
+
+    /**
+     * Find the positions the piece can reach. A start position that doesn't fit reaches nothing
+     */
+    void search(SearchBoard board, PieceType type, int rotation, int column, int row) {
+
+        Arrays.fill(previous, UNREACHED);
+        Arrays.fill(placedShapes, false);
+        Arrays.fill(queueHeads, 0);
+        Arrays.fill(queueTails, 0);
+        placementCount = 0;
+
+        if(!isInside(column, row) || !board.fits(type, rotation, column, row))
+            return;
+        int stackHeight = board.getStackHeight();
+        int highestRow = row - MIN_ROW;
+        enqueue(state(rotation, column, row), START);
+
+        while(highestRow >= 0) {
+            if(queueHeads[highestRow] == queueTails[highestRow]) {
+                highestRow--;
+                continue;
+            }
+            int current = rowQueues[highestRow][queueHeads[highestRow]++];
+            int currentRotation = rotationOf(current);
+            int currentColumn = columnOf(current);
+            int currentRow = rowOf(current);
+
+            // Left and right
+            for(int step = -1; step <= 1; step += 2) {
+                if(isInside(currentColumn + step, currentRow) && board.fits(type, currentRotation, currentColumn + step, currentRow))
+                    enqueue(state(currentRotation, currentColumn + step, currentRow), current);
+            }
+
+            // Rotate. A kick can move the piece up, which is expanded before this row continues
+            int rotatedRotation = (currentRotation + 1) % PieceType.ROTATION_COUNT;
+            for(int[] kick : Piece.ROTATION_KICKS) {
+                int kickedColumn = currentColumn + kick[0];
+                int kickedRow = currentRow + kick[1];
+                if(board.fits(type, rotatedRotation, kickedColumn, kickedRow)) {
+                    if(isInside(kickedColumn, kickedRow)) {
+                        enqueue(state(rotatedRotation, kickedColumn, kickedRow), current);
+                        highestRow = Math.max(highestRow, kickedRow - MIN_ROW);
+                    }
+                    break;
+                }
+            }
+
+            // Down, or rest here. Above the stack there is nothing to move around, so the piece falls straight to it
+            int fallRow = stackHeight - type.getMinYOffset(currentRotation);
+            if(fallRow < currentRow - 1)
+                enqueue(state(currentRotation, currentColumn, fallRow), current);
+            else if(board.fits(type, currentRotation, currentColumn, currentRow - 1))
+                enqueue(state(currentRotation, currentColumn, currentRow - 1), current);
+            else
+                addPlacement(type, current);
+        }
+    }
+
+    private void enqueue(int state, int from) {
+        if(previous[state] != UNREACHED)
+            return;
+        previous[state] = from;
+        int queue = rowOf(state) - MIN_ROW;
+        rowQueues[queue][queueTails[queue]++] = state;
+    }
+
+    // Rotations with the same squares leave the same board, so only the first one found is a placement
+    private void addPlacement(PieceType type, int state) {
+
+        int rotation = rotationOf(state);
+        int firstRotation = firstOfItsShape(type, rotation);
+        int column = columnOf(state) + type.getMinXOffset(rotation) - type.getMinXOffset(firstRotation);
+        int row = rowOf(state) + type.getMinYOffset(rotation) - type.getMinYOffset(firstRotation);
+        int shape = state(firstRotation, column, row);
+        if(!isInside(column, row) || placedShapes[shape])
+            return;
+        placedShapes[shape] = true;
+        placements[placementCount++] = state;
+    }
+
+    int getPlacementCount() {
+        return placementCount;
+    }
+
+    int getPlacement(int index) {
+        return placements[index];
+    }
+
+    /**
+     * @return Return the states from the start to the given state. A fall is one row per state
+     */
+    int[] getPath(int state) {
+
+        if(previous[state] == UNREACHED)
+            throw new IllegalArgumentException("State has not been reached. State given: "+state);
+
+        int length = 1;
+        for(int s = state; previous[s] != START; s = previous[s]) {
+            length += rowsBetween(previous[s], s);
+        }
+        int[] path = new int[length];
+        for(int s = state; s != START; s = previous[s]) {
+            // Fill in the rows the piece falls through
+            int rows = previous[s] == START ? 1 : rowsBetween(previous[s], s);
+            for(int i = 0; i < rows; i++) {
+                path[--length] = s + i * COLUMN_COUNT;
+            }
+        }
+        return path;
+    }
+
+    // How many steps the move between the states is. Only falls can be more than one
+    private static int rowsBetween(int from, int to) {
+        if(rotationOf(from) == rotationOf(to) && columnOf(from) == columnOf(to))
+            return rowOf(from) - rowOf(to);
+        return 1;
+    }
+
+    static int state(int rotation, int column, int row) {
+        return (rotation * ROW_COUNT + row - MIN_ROW) * COLUMN_COUNT + column - MIN_COLUMN;
+    }
+
+    static int rotationOf(int state) {
+        return state / (ROW_COUNT * COLUMN_COUNT);
+    }
+
+    static int columnOf(int state) {
+        return state % COLUMN_COUNT + MIN_COLUMN;
+    }
+
+    static int rowOf(int state) {
+        return state / COLUMN_COUNT % ROW_COUNT + MIN_ROW;
+    }
+
+    static boolean isInside(int column, int row) {
+        return column >= MIN_COLUMN && column < MIN_COLUMN + COLUMN_COUNT && row >= MIN_ROW && row < MIN_ROW + ROW_COUNT;
+    }
+
+    /**
+     * @return Return the first rotation that has the same squares as the given one
+     */
+    static int firstOfItsShape(PieceType type, int rotation) {
+        for(int other = 0; other < rotation; other++) {
+            if(type.getHeight(other) != type.getHeight(rotation))
+                continue;
+            boolean same = true;
+            for(int i = 0; i < type.getHeight(rotation); i++) {
+                if(type.getRowMask(other, i) != type.getRowMask(rotation, i))
+                    same = false;
+            }
+            if(same)
+                return other;
+        }
+        return rotation;
+    }
+}
@@ -0,0 +1,113 @@
+package bot;
+
+import logic.BoardView;
+import logic.Piece.PieceType;
+import logic.World;
+import logic.Zobrist;
+
+// A board the placement search can modify. It keeps its Zobrist hash up to date the same way World does
+class SearchBoard {
+
+    final int[] rowMasks = new int[World.PLAYABLE_WORLD_HEIGHT];
+    long hash;
+
+    void copyFrom(BoardView board) {
+        for(int i = 0; i < rowMasks.length; i++) {
+            rowMasks[i] = board.getRowMask(i);
+        }
+        hash = board.getBoardHash();
+    }
+
+    void copyFrom(SearchBoard board) {
+        System.arraycopy(board.rowMasks, 0, rowMasks, 0, rowMasks.length);
+        hash = board.hash;
+    }
+
+    /**
+     * Check if the piece can be at the given position. This matches Piece.canBeInPosition
+     */
+    boolean fits(PieceType type, int rotation, int column, int row) {
+
+        int left = column + type.getMinXOffset(rotation);
+        int bottom = row + type.getMinYOffset(rotation);
+
+        if(left < 0 || left + type.getWidth(rotation) > World.WORLD_WIDTH || bottom < 0)
+            return false;
+
+        for(int i = 0; i < type.getHeight(rotation) && bottom + i < rowMasks.length; i++) {
+            if((rowMasks[bottom + i] & (type.getRowMask(rotation, i) << left)) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Return the lowest row the piece falls to from the start row
+     */
+    int dropRow(PieceType type, int rotation, int column, int startRow) {
+        int row = startRow;
+        while(fits(type, rotation, column, row - 1))
+            row--;
+        return row;
+    }
+
+    /**
+     * Add the piece to the board and remove the complete rows
+     * @return Return the number of removed rows
+     */
+    int place(PieceType type, int rotation, int column, int row) {
+
+        int left = column + type.getMinXOffset(rotation);
+        int bottom = row + type.getMinYOffset(rotation);
+        int lowestCompleteRow = -1;
+        for(int i = 0; i < type.getHeight(rotation) && bottom + i < rowMasks.length; i++) {
+            int pieceMask = type.getRowMask(rotation, i) << left;
+            rowMasks[bottom + i] |= pieceMask;
+            hash ^= Zobrist.rowKey(bottom + i, pieceMask);
+            if(rowMasks[bottom + i] == World.FULL_ROW_MASK && lowestCompleteRow < 0)
+                lowestCompleteRow = bottom + i;
+        }
+        if(lowestCompleteRow < 0)
+            return 0;
+
+        // Rows from the lowest complete one upward move, so rehash them
+        for(int i = lowestCompleteRow; i < rowMasks.length; i++) {
+            hash ^= Zobrist.rowKey(i, rowMasks[i]);
+        }
+
+        // Compact the rows that are not complete
+        int lines = 0;
+        for(int i = lowestCompleteRow; i < rowMasks.length; i++) {
+            if(rowMasks[i] == World.FULL_ROW_MASK)
+                lines++;
+            else
+                rowMasks[i - lines] = rowMasks[i];
+        }
+        for(int i = rowMasks.length - lines; i < rowMasks.length; i++) {
+            rowMasks[i] = 0;
+        }
+
+        for(int i = lowestCompleteRow; i < rowMasks.length - lines; i++) {
+            hash ^= Zobrist.rowKey(i, rowMasks[i]);
+        }
+        return lines;
+    }
+
+    /**
+     * @return Return the number of rows up to and including the highest row that has a square
+     */
+    int getStackHeight() {
+        int height = rowMasks.length;
+        while(height > 0 && rowMasks[height - 1] == 0)
+            height--;
+        return height;
+    }
+
+    boolean isGameOver() {
+        for(int i = World.WORLD_HEIGHT; i < rowMasks.length; i++) {
+            if(rowMasks[i] != 0)
+                return true;
+        }
+        return false;
+    }
+}
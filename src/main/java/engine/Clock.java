@@ -0,0 +1,17 @@
+package engine;
+
+// The time source of the engine. Deadlines of ticks and frames are in the time of the clock,
+// so the game can be run faster than real time or stepped without waiting at all
+public interface Clock {
+
+    /**
+     * @return Return the current time in nanoseconds. Only differences between two values are meaningful
+     */
+    public long nanoTime();
+
+    /**
+     * Wait until the clock has reached the deadline
+     * @param policy How the wait is done if the clock waits in real time
+     */
+    public void waitUntil(long deadline, PacingPolicy policy);
+}
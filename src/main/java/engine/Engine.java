@@ -2,90 +2,114 @@ package engine;
 
 import game.GameInfo;
 
-// This class manages the main thread that the game is running on
-public class Engine implements Runnable, EngineInterface {
+// This class manages the threads that the game is running on
+// By default the game is updated and rendered on the thread that starts the engine. In multithreaded mode the game is
+// updated on its own thread at a fixed rate, so slow frames can't delay the ticks
+public class Engine implements EngineInterface {
 
     // A constant that can be used to enable vsync
     public static final int VSYNC = -1;
 
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
     // Determines whether or not the engine is running
-    private boolean running;
+    private volatile boolean running;
     // Determines whether or not the tps and fps is printed to the console output
     private boolean printFps;
+    // Determines whether or not the game is updated on a separate thread
+    private boolean multithreaded;
+    // Determines how the engine waits for the next tick or frame. The game can change it while the engine runs
+    private volatile PacingPolicy pacingPolicy;
     // Desired ticks per second
     private int desiredTPS;
     // Desired frames per second
     private int desiredFPS;
 
+    // Seconds between two dumps of the metrics, 0 if they aren't dumped
+    private int metricsDumpInterval;
+    // The engine stops after this many updates, 0 if it runs until it's stopped
+    private long tickLimit;
+    private long tickCount;
+    // Deadline of the last update and the time between two updates. Used to calculate the interpolation alpha
+    private volatile long lastTickDeadline;
+    private volatile long tickInterval;
+
     // An interface for invoking call back functions
     private final GameInterface gameInterface;
+    private final EngineMetrics metrics;
+    // Time source of the deadlines
+    private final Clock clock;
+    // Whether the clock is the wall clock. Then swapping the buffers with vsync waits in real time
+    private final boolean realTime;
 
     /**
-     * Create an engine
+     * Create an engine that runs in real time
      * @param game An implemented instance of the game interface
      */
     public Engine(GameInterface game) {
+        this(game, new RealTimeClock());
+    }
+
+    /**
+     * Create an engine
+     * @param game An implemented instance of the game interface
+     * @param clock Decides when the game is updated and rendered
+     */
+    public Engine(GameInterface game, Clock clock) {
         running = false;
         printFps = false;
+        multithreaded = false;
+        pacingPolicy = PacingPolicy.LOW_LATENCY;
+        metricsDumpInterval = 0;
         gameInterface = game;
+        metrics = new EngineMetrics();
+        this.clock = clock;
+        realTime = clock instanceof RealTimeClock;
+        tickLimit = 0;
         desiredFPS = -1;
         desiredTPS = -1;
     }
 
-    // Called when a new thread is created. This should not be called manually
-    @Override
-    public void run() {
-
-        gameInterface.init(this);
+    // Update and render on the current thread
+    private void run() {
 
         // Declare variables that keep track of how often the game renders and updates
         int fps = 0;
         int tps = 0;
 
-        // Calculate how much time is between each render/update
-        double nsPerTick = desiredTPS == 0 ? 0 : 1000000000d / desiredTPS;
-        double nsPerFrame = desiredFPS == 0 ? 0 : 1000000000d / desiredFPS;
-        // Store the current time in a variable
-        double then = System.nanoTime();
-        double now;
-        // Variables that keep track of unprocessed ticks and frames
-        double unprocessedTicks = 0;
-        double unprocessedFrames = 0;
+        // Keep track of when the next update and render are due
+        long now = clock.nanoTime();
+        FramePacer tickPacer = FramePacer.forRate(desiredTPS, now);
+        FramePacer framePacer = FramePacer.forRate(desiredFPS, now);
 
-        double fpsTimer = System.currentTimeMillis();
+        long counterTimer = now;
 
         while(running) {
 
-            // Math
-            now = System.nanoTime();
-            unprocessedTicks += (now - then) / nsPerTick;
-            unprocessedFrames += (now - then) / nsPerFrame;
-            then = now;
-
-            while(unprocessedTicks >= 1) {
+            now = clock.nanoTime();
+            while(running && tickPacer.tryAdvance(now)) {
                 // Update
-                gameInterface.update();
+                update(tickPacer);
                 tps++;
-                unprocessedTicks--;
             }
 
             // Check if vsync is enabled
             if(desiredFPS == VSYNC) {
                 // Render
-                gameInterface.render();
+                render();
                 fps++;
-                unprocessedFrames -= Math.floor(unprocessedFrames);
             }
             else {
-                if(unprocessedFrames >= 1) {
+                if(framePacer.isDue(now)) {
                     // Render
-                    gameInterface.render();
+                    render();
                     fps++;
-                    unprocessedFrames -= Math.floor(unprocessedFrames);
+                    // Skip the frames that were missed
+                    framePacer.reset(now);
                 }
             }
 
-            if(System.currentTimeMillis() - fpsTimer >= 1000) {
+            if(now - counterTimer >= NANOS_PER_SECOND) {
                 // Update fps and tps to game info
                 GameInfo.FPS = fps;
                 GameInfo.TPS = tps;
@@ -94,28 +118,175 @@ public class Engine implements Runnable, EngineInterface {
                     System.out.println("FPS: " + fps + " TPS: " + tps);
                 }
                 // Update fps timer
-                fpsTimer = System.currentTimeMillis();
+                counterTimer += NANOS_PER_SECOND;
                 fps = 0;
                 tps = 0;
             }
 
-            // Wait a couple milliseconds to reduce CPU-usage
+            // Wait until the next update or render is due.
+            // With vsync the swap paces the loop in real time, so frames are drawn between the ticks. A manual or scaled
+            // clock only moves forward when it is waited on, so then the loop waits for the next update instead
+            if(desiredFPS == VSYNC) {
+                if(!realTime)
+                    clock.waitUntil(tickPacer.getDeadline(), pacingPolicy);
+            }
+            else {
+                long deadline = tickPacer.getDeadline() - framePacer.getDeadline() < 0 ? tickPacer.getDeadline() : framePacer.getDeadline();
+                clock.waitUntil(deadline, pacingPolicy);
+            }
+        }
+    }
+
+    // Update the game at a fixed rate. Runs on the tick thread in multithreaded mode
+    private void runTicks() {
+
+        int tps = 0;
+
+        long now = clock.nanoTime();
+        FramePacer tickPacer = FramePacer.forRate(desiredTPS, now);
+
+        long counterTimer = now;
+
+        while(running) {
+
+            now = clock.nanoTime();
+            while(running && tickPacer.tryAdvance(now)) {
+                // Update
+                update(tickPacer);
+                tps++;
+            }
+
+            if(now - counterTimer >= NANOS_PER_SECOND) {
+                GameInfo.TPS = tps;
+                counterTimer += NANOS_PER_SECOND;
+                tps = 0;
+            }
+
+            // Wait until the next tick is due
+            clock.waitUntil(tickPacer.getDeadline(), pacingPolicy);
+        }
+    }
+
+    // Render the game as often as wanted. Runs on the thread that started the engine in multithreaded mode
+    private void runFrames() {
+
+        int fps = 0;
+
+        long now = clock.nanoTime();
+        FramePacer framePacer = FramePacer.forRate(desiredFPS, now);
+
+        long counterTimer = now;
+
+        while(running) {
+
+            now = clock.nanoTime();
+
+            // Vsync limits the frame rate when the buffers are swapped
+            if(desiredFPS == VSYNC || framePacer.isDue(now)) {
+                // Render
+                render();
+                fps++;
+                // Skip the frames that were missed
+                framePacer.reset(now);
+            }
+
+            if(now - counterTimer >= NANOS_PER_SECOND) {
+                GameInfo.FPS = fps;
+
+                if(printFps) {
+                    System.out.println("FPS: " + fps + " TPS: " + GameInfo.TPS);
+                }
+                counterTimer += NANOS_PER_SECOND;
+                fps = 0;
+            }
+
+            // Wait until the next frame is due
+            if(desiredFPS != VSYNC)
+                clock.waitUntil(framePacer.getDeadline(), pacingPolicy);
+        }
+    }
+
+    // Update the game and record how late and how long the update was. Stops the engine at the tick limit
+    private void update(FramePacer tickPacer) {
+
+        // The pacer has already moved to the next deadline
+        long deadline = tickPacer.getDeadline() - tickPacer.getInterval();
+        metrics.getTickLag().record(clock.nanoTime() - deadline);
+
+        // Durations are measured in real time even if the clock isn't
+        long start = System.nanoTime();
+        gameInterface.update();
+        metrics.getTickTimes().record(System.nanoTime() - start);
+
+        // Published after the update, so a frame is never drawn with the alpha of a later update
+        tickInterval = tickPacer.getInterval();
+        lastTickDeadline = deadline;
+
+        tickCount++;
+        if(tickLimit > 0 && tickCount >= tickLimit)
+            stop();
+    }
+
+    // Render the game and record how long it took
+    private void render() {
+
+        // How far the time is between the last update and the next one
+        float alpha = 1f;
+        long interval = tickInterval;
+        if(interval > 0)
+            alpha = Math.max(0f, Math.min(1f, (clock.nanoTime() - lastTickDeadline) / (float) interval));
+
+        long start = System.nanoTime();
+        gameInterface.render(alpha);
+        metrics.getFrameTimes().record(System.nanoTime() - start);
+    }
+
+    // Print the metrics every metricsDumpInterval seconds while the engine is running
+    private void dumpMetrics() {
+
+        while(running) {
             try {
-                Thread.sleep(2);
+                Thread.sleep(metricsDumpInterval * 1000L);
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                return;
             }
+            System.out.println(metrics.toJson());
         }
     }
 
     /**
-     * Start the engine
+     * Start the engine. Returns when the engine is stopped
+     * The game is rendered on the calling thread, which has to be the one that owns the OpenGL context
      */
     @Override
     public void start() {
         running = true;
-        // Create a new thread and start it
-        new Thread(this).run();
+        tickCount = 0;
+        lastTickDeadline = clock.nanoTime();
+        tickInterval = 0;
+        gameInterface.init(this);
+
+        if(metricsDumpInterval > 0) {
+            Thread metricsThread = new Thread(this::dumpMetrics, "Metrics thread");
+            metricsThread.setDaemon(true);
+            metricsThread.start();
+        }
+
+        if(!multithreaded) {
+            run();
+            return;
+        }
+
+        Thread tickThread = new Thread(this::runTicks, "Tick thread");
+        tickThread.start();
+        runFrames();
+
+        // Let the last tick finish before returning
+        try {
+            tickThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -149,4 +320,59 @@ public class Engine implements Runnable, EngineInterface {
     public void printFps(boolean print) {
         printFps = print;
     }
+
+    /**
+     * Has to be set before the engine is started
+     * @param multithreaded True: Update on a separate thread. False: Update and render on the same thread.
+     */
+    @Override
+    public void setMultithreaded(boolean multithreaded) {
+        this.multithreaded = multithreaded;
+    }
+
+    /**
+     * @return Return the latency histograms of the engine. They can be read from any thread
+     */
+    @Override
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Has to be set before the engine is started
+     * @param seconds How often the metrics are printed as JSON. 0 disables printing
+     */
+    @Override
+    public void setMetricsDumpInterval(int seconds) {
+
+        if(seconds < 0)
+            throw new IllegalArgumentException("Interval can't be negative. Interval given: "+seconds);
+
+        metricsDumpInterval = seconds;
+    }
+
+    /**
+     * Has to be set before the engine is started
+     * @param ticks How many updates are done before the engine stops. 0 runs until the engine is stopped
+     */
+    @Override
+    public void setTickLimit(long ticks) {
+
+        if(ticks < 0)
+            throw new IllegalArgumentException("Tick limit can't be negative. Tick limit given: "+ticks);
+
+        tickLimit = ticks;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @param policy How the engine waits between ticks and frames
+     */
+    @Override
+    public void setPacingPolicy(PacingPolicy policy) {
+        pacingPolicy = policy;
+    }
 }
@@ -6,4 +6,9 @@ public interface EngineInterface {
 	public void setDesiredTPS(int tps);
 	public void setDesiredFPS(int fps);
 	public void printFps(boolean print);
+	public void setMultithreaded(boolean multithreaded);
+	public void setPacingPolicy(PacingPolicy policy);
+	public EngineMetrics getMetrics();
+	public void setMetricsDumpInterval(int seconds);
+	public void setTickLimit(long ticks);
 }
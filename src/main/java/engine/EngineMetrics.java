@@ -0,0 +1,77 @@
+package engine;
+
+// Latency histograms of the engine. Every value is in nanoseconds
+// The histograms are recorded on the tick and render threads and can be read from any thread without locking
+public class EngineMetrics {
+
+    // Percentiles that are included in the dump
+    private static final double[] DUMP_PERCENTILES = {50, 99, 99.9};
+    private static final String[] DUMP_PERCENTILE_NAMES = {"p50", "p99", "p999"};
+
+    // How long update() takes
+    private final LatencyHistogram tickTimes = new LatencyHistogram();
+    // How long render() takes
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+    // How long swapping the color buffers takes. Recorded by the renderer
+    private final LatencyHistogram swapTimes = new LatencyHistogram();
+    // How late update() is called compared to its deadline
+    private final LatencyHistogram tickLag = new LatencyHistogram();
+    // Time from a key event to the end of the first frame that shows its effect. Recorded by the game
+    private final LatencyHistogram inputLatency = new LatencyHistogram();
+
+    public LatencyHistogram getTickTimes() {
+        return tickTimes;
+    }
+
+    public LatencyHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    public LatencyHistogram getSwapTimes() {
+        return swapTimes;
+    }
+
+    public LatencyHistogram getTickLag() {
+        return tickLag;
+    }
+
+    public LatencyHistogram getInputLatency() {
+        return inputLatency;
+    }
+
+    /**
+     * Forget every recorded value
+     */
+    public void reset() {
+        tickTimes.reset();
+        frameTimes.reset();
+        swapTimes.reset();
+        tickLag.reset();
+        inputLatency.reset();
+    }
+
+    /**
+     * @return Return the metrics as one line of JSON, e.g. for a log that is read by a script
+     */
+    public String toJson() {
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"time\":").append(System.currentTimeMillis());
+        appendHistogram(json, "tick", tickTimes);
+        appendHistogram(json, "frame", frameTimes);
+        appendHistogram(json, "swap", swapTimes);
+        appendHistogram(json, "tickLag", tickLag);
+        appendHistogram(json, "inputLatency", inputLatency);
+        json.append('}');
+        return json.toString();
+    }
+
+    private static void appendHistogram(StringBuilder json, String name, LatencyHistogram histogram) {
+
+        json.append(",\"").append(name).append("\":{\"count\":").append(histogram.getCount());
+        for(int i = 0; i < DUMP_PERCENTILES.length; i++) {
+            json.append(",\"").append(DUMP_PERCENTILE_NAMES[i]).append("\":").append(histogram.getPercentile(DUMP_PERCENTILES[i]));
+        }
+        json.append(",\"max\":").append(histogram.getMax()).append('}');
+    }
+}
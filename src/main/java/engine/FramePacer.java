@@ -0,0 +1,89 @@
+package engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Keeps the deadline of something that should happen at a fixed rate, e.g. the ticks or the frames of the engine
+// Times are monotonic System.nanoTime() values, so they are only compared by their difference
+public class FramePacer {
+
+    private final long interval;
+    private long deadline;
+
+    /**
+     * @param interval Nanoseconds between two deadlines. 0 makes every moment a deadline
+     * @param now The current time. The first deadline is one interval after it
+     */
+    public FramePacer(long interval, long now) {
+
+        if(interval < 0)
+            throw new IllegalArgumentException("Interval can't be negative. Interval given: "+interval);
+
+        this.interval = interval;
+        deadline = now + interval;
+    }
+
+    /**
+     * Create a pacer for a rate given in events per second
+     * @param rate Events per second. 0 or less makes every moment a deadline
+     */
+    public static FramePacer forRate(int rate, long now) {
+        return new FramePacer(rate <= 0 ? 0 : 1000000000L / rate, now);
+    }
+
+    /**
+     * @return true if the current deadline has been reached
+     */
+    public boolean isDue(long now) {
+        return now - deadline >= 0;
+    }
+
+    /**
+     * Move to the next deadline if the current one has been reached. The deadlines don't drift even if the event
+     * happens late, so calling this in a loop catches up with the missed deadlines
+     * @return true if the deadline had been reached. With an interval of 0 it's reached once for every given time
+     */
+    public boolean tryAdvance(long now) {
+
+        if(!isDue(now))
+            return false;
+
+        deadline = interval == 0 ? now + 1 : deadline + interval;
+        return true;
+    }
+
+    /**
+     * Move the deadline one interval after the given time, e.g. to skip the deadlines that were missed
+     */
+    public void reset(long now) {
+        deadline = now + interval;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Wait until the deadline. Returns immediately if it has passed or the thread is interrupted
+     * @param deadline A System.nanoTime() value
+     */
+    public static void waitUntil(long deadline, PacingPolicy policy) {
+
+        long remaining = deadline - System.nanoTime();
+
+        // Park for the part of the wait that doesn't need to be precise
+        while(remaining > policy.getSpinNanos() && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining - policy.getSpinNanos());
+            remaining = deadline - System.nanoTime();
+        }
+
+        // Spin for the rest
+        while(remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            Thread.onSpinWait();
+            remaining = deadline - System.nanoTime();
+        }
+    }
+}
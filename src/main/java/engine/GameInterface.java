@@ -1,8 +1,12 @@
 package engine;
 
+// update() is called at the desired tick rate and render() as often as frames are wanted
+// In multithreaded mode they are called on different threads, so render() may only read what update() publishes
+// render() gets alpha, the part of the tick interval that has passed since the last update, between 0 and 1.
+// It can be used to draw the game between the last two updates
 public interface GameInterface {
 	
 	public void init(EngineInterface engine);
 	public void update();
-	public void render();
+	public void render(float alpha);
 }
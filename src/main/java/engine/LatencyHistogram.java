@@ -0,0 +1,112 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts nanosecond durations in log-linear buckets like HdrHistogram
+// Every power of two is split into SUB_BUCKET_COUNT / 2 linear buckets, so a percentile is accurate to about 3%.
+// Recording and reading are lock-free and allocation-free, so one thread can record while another reads
+public class LatencyHistogram {
+
+    // Values below 2^SUB_BUCKET_BITS get a bucket of their own
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    // Longer durations, about 18 minutes, are counted in the last bucket
+    private static final int MAX_VALUE_BITS = 40;
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKET_COUNT);
+        totalCount = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * @param value Duration in nanoseconds. Negative values are counted as 0
+     */
+    public void record(long value) {
+
+        if(value < 0)
+            value = 0;
+
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+
+        long currentMax = max.get();
+        while(value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return Return the longest recorded duration in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Return the highest value of the bucket that contains the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+
+        if(percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile has to be between 0 and 100. Percentile given: "+percentile);
+
+        long count = totalCount.get();
+        if(count == 0)
+            return 0;
+
+        // Values recorded while reading can make the buckets add up to more than the count, but never less
+        long target = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if(seen >= target)
+                return Math.min(bucketHighestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Forget every recorded value. Values recorded at the same time may be lost
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        max.set(0);
+    }
+
+    private static int bucketIndex(long value) {
+
+        if(value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        // How many bits the value has to be shifted to fit into the sub buckets
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS + 1;
+        int index = shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    private static long bucketHighestValue(int index) {
+
+        if(index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - shift * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,44 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Only moves when it's advanced or waited on. Waiting jumps straight to the deadline,
+// so the engine runs its ticks and frames back to back in the same order as in real time
+public class ManualClock implements Clock {
+
+    private final AtomicLong time;
+
+    public ManualClock() {
+        this(0);
+    }
+
+    /**
+     * @param time The time the clock starts from
+     */
+    public ManualClock(long time) {
+        this.time = new AtomicLong(time);
+    }
+
+    @Override
+    public long nanoTime() {
+        return time.get();
+    }
+
+    @Override
+    public void waitUntil(long deadline, PacingPolicy policy) {
+        // The clock never moves backwards, even if another thread has already waited for a later deadline
+        time.accumulateAndGet(deadline, (current, target) -> target - current > 0 ? target : current);
+    }
+
+    /**
+     * Move the clock forward
+     * @param nanos Nanoseconds to add. Can't be negative
+     */
+    public void advance(long nanos) {
+
+        if(nanos < 0)
+            throw new IllegalArgumentException("The clock can't be moved backwards. Nanos given: "+nanos);
+
+        time.addAndGet(nanos);
+    }
+}
@@ -0,0 +1,26 @@
+package engine;
+
+// Decides how the engine waits for the next tick or frame
+// The engine parks the thread until shortly before the deadline and spins for the rest of the wait.
+// A longer spin is more precise, because a parked thread can wake up late, but it uses more CPU
+public enum PacingPolicy {
+    // Park until the deadline. Uses almost no CPU, but ticks can be late by the scheduler's wakeup delay
+    POWER_SAVING(0),
+    // Park until half a millisecond before the deadline and spin for the rest
+    LOW_LATENCY(500000),
+    // Never park. Uses a full core for the most precise timing
+    BUSY_SPIN(Long.MAX_VALUE);
+
+    private final long spinNanos;
+
+    private PacingPolicy(long spinNanos) {
+        this.spinNanos = spinNanos;
+    }
+
+    /**
+     * @return Return how many nanoseconds before the deadline the thread stops parking and starts spinning
+     */
+    public long getSpinNanos() {
+        return spinNanos;
+    }
+}
@@ -0,0 +1,15 @@
+package engine;
+
+// Runs in real time. This is the default clock of the engine
+public class RealTimeClock implements Clock {
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void waitUntil(long deadline, PacingPolicy policy) {
+        FramePacer.waitUntil(deadline, policy);
+    }
+}
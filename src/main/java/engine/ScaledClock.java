@@ -0,0 +1,36 @@
+package engine;
+
+// Runs a given number of times faster or slower than real time, e.g. to soak test the game at 100x speed
+public class ScaledClock implements Clock {
+
+    private final double speed;
+    // Real time when the clock was created. The clock starts from the same value
+    private final long origin;
+
+    /**
+     * @param speed How many nanoseconds pass on the clock during one real nanosecond
+     */
+    public ScaledClock(double speed) {
+
+        if(!(speed > 0) || Double.isInfinite(speed))
+            throw new IllegalArgumentException("Speed has to be positive. Speed given: "+speed);
+
+        this.speed = speed;
+        origin = System.nanoTime();
+    }
+
+    @Override
+    public long nanoTime() {
+        return origin + (long) ((System.nanoTime() - origin) * speed);
+    }
+
+    @Override
+    public void waitUntil(long deadline, PacingPolicy policy) {
+        // Wait until the real time that the deadline corresponds to
+        FramePacer.waitUntil(origin + (long) Math.ceil((deadline - origin) / speed), policy);
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+}
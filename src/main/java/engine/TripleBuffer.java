@@ -0,0 +1,57 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Passes objects from one writer thread to one reader thread without locks or copying
+// The writer fills the back buffer and publishes it, the reader always gets the most recently published buffer.
+// Neither thread ever waits for the other, and a buffer is never written while it's being read
+public class TripleBuffer<T> {
+
+    // Bits of the middle state. The index of the middle buffer and whether it was published after the last read
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle;
+    // Owned by the writer
+    private int back;
+    // Owned by the reader
+    private int front;
+
+    /**
+     * @param factory Creates the three buffers
+     */
+    public TripleBuffer(Supplier<T> factory) {
+
+        buffers = new Object[]{factory.get(), factory.get(), factory.get()};
+        back = 0;
+        middle = new AtomicInteger(1);
+        front = 2;
+    }
+
+    /**
+     * @return Return the buffer the writer can fill. It stays the same until publish() is called
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Make the write buffer available to the reader and get a new write buffer
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * @return Return the most recently published buffer. It isn't modified until the next call of this method
+     */
+    @SuppressWarnings("unchecked")
+    public T getReadBuffer() {
+        if((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & INDEX_MASK;
+        return (T) buffers[front];
+    }
+}
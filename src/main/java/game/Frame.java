@@ -0,0 +1,40 @@
+package game;
+
+import logic.WorldEventBuffer;
+import logic.WorldSnapshot;
+
+// Everything the renderer needs to draw one tick of the game
+// Frames are filled on the tick thread and passed to the render thread, which only reads them
+public class Frame {
+
+    final WorldSnapshot snapshot = new WorldSnapshot();
+    Game.State state;
+    // Number of updates the game had done when the frame was filled
+    int updateCount;
+    WorldEventBuffer events;
+    // Whether there was input since the previous frame and when the first of it was received
+    boolean hasInput;
+    long inputTime;
+
+    /**
+     * @return Return the state of the world at the tick of the frame
+     */
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public Game.State getState() {
+        return state;
+    }
+
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * @return Return the events of the drawn world. They can be ahead of the frame by the ticks that aren't drawn yet
+     */
+    public WorldEventBuffer getEvents() {
+        return events;
+    }
+}
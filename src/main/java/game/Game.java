@@ -3,17 +3,28 @@ package game;
 import audio.AudioPlayer;
 import audio.Sound;
 import engine.EngineInterface;
+import engine.EngineMetrics;
+import engine.PacingPolicy;
+import engine.TripleBuffer;
 import engine.GameInterface;
 import logic.World;
+import logic.WorldEventBuffer;
 import logic.WorldToGameInterface;
+import replay.ReplayRecorder;
 import userInput.KeyListener;
 import userInput.KeyListenerInterface;
 import visualizer.Visualizer;
 import visualizer.VisualizerToGameInterface;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 // This class is the core of the game and it handles most of the basic game logic
 public class Game implements GameInterface, VisualizerToGameInterface, WorldToGameInterface, KeyListenerInterface {
 
+    // Every game is recorded into this directory
+    private static final String REPLAY_DIRECTORY = "replays";
+
     // An interface for using the engine
     private EngineInterface engineInterface;
 
@@ -21,6 +32,21 @@ public class Game implements GameInterface, VisualizerToGameInterface, WorldToGa
     private final KeyListener keyListener;
     private final AudioPlayer audioPlayer;
     private final World world;
+    private final ReplayRecorder replayRecorder;
+    // Reads the events of the world for the sound effects
+    private final WorldEventBuffer.Cursor worldEvents;
+    // Frames passed from update() to render()
+    private final TripleBuffer<Frame> frames;
+    private int updateCount;
+    // Input that hasn't been published in a frame yet
+    private boolean inputPending;
+    private long inputTime;
+    // Update count of the last frame that was drawn
+    private int lastDrawnUpdateCount = -1;
+    private EngineMetrics metrics;
+    // Set by the window thread when the window is closed. The tick thread stops the game, so it can't change the world
+    // while the recording is finished
+    private volatile boolean windowClosed;
 
     private State state;
 
@@ -31,8 +57,13 @@ public class Game implements GameInterface, VisualizerToGameInterface, WorldToGa
         visualizer = new Visualizer(this);
         this.keyListener = keyListener;
         audioPlayer = new AudioPlayer();
-        world = new World(this, audioPlayer);
+        world = new World(this);
+        replayRecorder = new ReplayRecorder();
+        worldEvents = world.getEvents().createCursor();
+        frames = new TripleBuffer<Frame>(Frame::new);
         visualizer.getWindow().setKeyCallback(keyListener);
+        addKeyListener(world.getTetrisPlayer());
+        addKeyListener(replayRecorder);
         addKeyListener(this);
     }
 
@@ -41,25 +72,64 @@ public class Game implements GameInterface, VisualizerToGameInterface, WorldToGa
     @Override
     public void init(EngineInterface engine) {
         engineInterface = engine;
-        state = State.MainMenu;
+        metrics = engine.getMetrics();
+        visualizer.setMetrics(metrics);
+        setState(State.MainMenu);
+        publishFrame();
     }
 
     @Override
     public void update() {
+        if(windowClosed) {
+            replayRecorder.stop();
+            engineInterface.stop();
+            return;
+        }
+        if(keyListener.dispatchEvents() > 0 && !inputPending) {
+            inputPending = true;
+            inputTime = keyListener.getFirstDispatchedTime();
+        }
         if(state == State.Running)
             world.tick();
+        playWorldSounds();
+        updateCount++;
+        publishFrame();
     }
 
     @Override
-    public void render() {
-        visualizer.update(world, state);
+    public void render(float alpha) {
+        // The window has already been destroyed
+        if(windowClosed)
+            return;
+        Frame frame = frames.getReadBuffer();
+        visualizer.update(frame, alpha);
+
+        // The input of a frame has been displayed once the frame is drawn for the first time
+        if(frame.updateCount != lastDrawnUpdateCount) {
+            lastDrawnUpdateCount = frame.updateCount;
+            if(frame.hasInput)
+                metrics.getInputLatency().record(System.nanoTime() - frame.inputTime);
+        }
+    }
+
+    // Copy the state of the game into the next frame and make it available to the renderer
+    private void publishFrame() {
+        Frame frame = frames.getWriteBuffer();
+        world.captureSnapshot(frame.snapshot);
+        frame.state = state;
+        frame.updateCount = updateCount;
+        frame.events = world.getEvents();
+        frame.hasInput = inputPending;
+        frame.inputTime = inputTime;
+        inputPending = false;
+        frames.publish();
     }
 
     // VISUALIZER
 
     @Override
     public void windowClosed() {
-        engineInterface.stop();
+        windowClosed = true;
     }
 
     @Override
@@ -70,24 +140,40 @@ public class Game implements GameInterface, VisualizerToGameInterface, WorldToGa
     // WORLD
 
     @Override
-    public void addKeyListener(KeyListenerInterface keyListenerInterface) {
-        keyListener.addKeyListener(keyListenerInterface);
+    public void gameEnded() {
+        setState(State.GameOver);
+        replayRecorder.stop();
     }
 
-    @Override
-    public void gameEnded() {
-        state = State.GameOver;
+    private void playWorldSounds() {
+        while(worldEvents.next()) {
+            switch(worldEvents.getType()) {
+                case PieceLocked: {
+                    audioPlayer.playSound(Sound.Place_Sound);
+                    break;
+                }
+                case LinesCleared: {
+                    audioPlayer.playSound(Sound.Clear_Sound);
+                    System.out.println("Rows cleared: "+world.getScore());
+                    break;
+                }
+            }
+        }
     }
 
     // KEY LISTENER
 
+    public void addKeyListener(KeyListenerInterface keyListenerInterface) {
+        keyListener.addKeyListener(keyListenerInterface);
+    }
+
     @Override
     public void onKeyPressed(int key, int action) {
         // Space
         if(key == 32) {
             if(action == 1) {
                 if(state == State.GameOver) {
-                    state = State.MainMenu;
+                    setState(State.MainMenu);
                     audioPlayer.stopSound(Sound.Main_Theme);
                 }
                 else if(state == State.MainMenu)
@@ -98,10 +184,21 @@ public class Game implements GameInterface, VisualizerToGameInterface, WorldToGa
 
     private void startNewGame() {
         world.reset();
-        state = State.Running;
+        replayRecorder.start(createReplayPath(), world);
+        setState(State.Running);
         audioPlayer.loopSound(Sound.Main_Theme);
     }
 
+    // Only a running game needs precise ticks. The menus let the engine park between ticks to save power
+    private void setState(State state) {
+        this.state = state;
+        engineInterface.setPacingPolicy(state == State.Running ? PacingPolicy.LOW_LATENCY : PacingPolicy.POWER_SAVING);
+    }
+
+    private Path createReplayPath() {
+        return Paths.get(REPLAY_DIRECTORY, System.currentTimeMillis() + ".replay");
+    }
+
     public enum State {
         Running,
         MainMenu,
@@ -0,0 +1,13 @@
+package logic;
+
+// A read-only view of the placed squares that can be queried without copying the board
+// Rows are counted from the bottom and columns from the left
+public interface BoardView {
+    public int getRowMask(int row);
+    public boolean isOccupied(int column, int row);
+    public int getSquare(int column, int row);
+    public long getBoardHash();
+    public int getColumnHeight(int column);
+    public int getHoleCount();
+    public int getMaxHeight();
+}
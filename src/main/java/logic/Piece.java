@@ -1,23 +1,34 @@
 package logic;
 
+import java.util.Arrays;
+
 public class Piece extends Sprite {
 
+    // Offsets in squares that are tried in order when a piece is rotated, until one of them fits
+    public static final int[][] ROTATION_KICKS = new int[][]{
+            {0, 0}, {0, 1}, {-1, 0}, {1, 0}, {0, 2}, {-2, 0}, {2, 0}
+    };
+
     private final int fallTime;
     private int fallTimer;
     private final int hardenTime;
     private int hardenTimer;
     private final int fastFallSpeed;
     private PieceType type;
-    private int[][] shape;
+    private int rotation;
     private boolean fallFast;
     private World world;
+    private final BoardView board;
     private boolean hardened;
+    // Y-coordinate at the start of the last tick. Used to draw the piece between two ticks
+    private int previousYPos;
 
     protected Piece(int x, int y, PieceType type, World world, int fallTime) {
         super(x, y);
         this.type = type;
         this.world = world;
-        shape = type.getShape();
+        board = world.getBoard();
+        rotation = 0;
         fallFast = false;
         this.fallTime = fallTime;
         fallTimer = fallTime;
@@ -25,12 +36,26 @@ public class Piece extends Sprite {
         hardenTimer = hardenTime;
         fastFallSpeed = 5;
         hardened = false;
+        previousYPos = y;
+    }
+
+    /**
+     * Restore the state of a piece from a snapshot
+     */
+    protected void restore(int rotation, int previousYPos, int fallTimer, int hardenTimer, boolean fallFast) {
+        this.rotation = rotation;
+        this.previousYPos = previousYPos;
+        this.fallTimer = fallTimer;
+        this.hardenTimer = hardenTimer;
+        this.fallFast = fallFast;
     }
 
     @Override
     protected void tick() {
 
-        if(canBeInPosition(xPos, yPos - 10, shape)) {
+        previousYPos = yPos;
+
+        if(canBeInPosition(xPos, yPos - 10, rotation)) {
             fallTimer--;
         }
         else {
@@ -47,27 +72,16 @@ public class Piece extends Sprite {
     }
 
     public void rotate() {
-        int[][] rotatedShape = rotatePiece(shape);
-        if(canBeInPosition(xPos, yPos, rotatedShape)) {
-            shape = rotatedShape;
-        } else if(canBeInPosition(xPos, yPos+10, rotatedShape)) {
-            shape = rotatedShape;
-            yPos += 10;
-        } else if(canBeInPosition(xPos-10, yPos, rotatedShape)) {
-            shape = rotatedShape;
-            xPos -= 10;
-        } else if(canBeInPosition(xPos+10, yPos, rotatedShape)) {
-            shape = rotatedShape;
-            xPos += 10;
-        } else if(canBeInPosition(xPos, yPos+20, rotatedShape)) {
-            shape = rotatedShape;
-            yPos += 20;
-        } else if(canBeInPosition(xPos-20, yPos, rotatedShape)) {
-            shape = rotatedShape;
-            xPos -= 20;
-        } else if(canBeInPosition(xPos+20, yPos, rotatedShape)) {
-            shape = rotatedShape;
-            xPos += 20;
+        int rotatedRotation = (rotation + 1) % PieceType.ROTATION_COUNT;
+        for(int[] kick : ROTATION_KICKS) {
+            int dx = kick[0] * World.GRID_SIZE;
+            int dy = kick[1] * World.GRID_SIZE;
+            if(canBeInPosition(xPos + dx, yPos + dy, rotatedRotation)) {
+                rotation = rotatedRotation;
+                xPos += dx;
+                yPos += dy;
+                return;
+            }
         }
     }
 
@@ -76,7 +90,7 @@ public class Piece extends Sprite {
         if(right)
             dx = 10;
 
-        if(canBeInPosition(xPos + dx, yPos, shape)) {
+        if(canBeInPosition(xPos + dx, yPos, rotation)) {
             xPos += dx;
         }
     }
@@ -91,11 +105,27 @@ public class Piece extends Sprite {
     }
 
     public int getGhostBlockHeight() {
-        int height = yPos;
-        while(canBeInPosition(xPos, height - 10, shape)) {
-            height -= 10;
+
+        // Column and row of the bottom left corner of the piece's bounding box
+        int column = xPos / World.GRID_SIZE + type.getMinXOffset(rotation);
+        int row = yPos / World.GRID_SIZE + type.getMinYOffset(rotation);
+
+        // If the piece is above the stack in every column it lands on the highest column under it
+        int landingRow = 0;
+        for(int i = 0; i < type.getWidth(rotation); i++) {
+            int columnHeight = board.getColumnHeight(column + i);
+            int bottom = type.getColumnBottom(rotation, i);
+            if(row + bottom < columnHeight) {
+                // The piece is under an overhang, so look for the landing row one square at a time
+                int height = yPos;
+                while(canBeInPosition(xPos, height - 10, rotation)) {
+                    height -= 10;
+                }
+                return height;
+            }
+            landingRow = Math.max(landingRow, columnHeight - bottom);
         }
-        return height;
+        return (landingRow - type.getMinYOffset(rotation)) * World.GRID_SIZE;
     }
 
     /**
@@ -103,7 +133,7 @@ public class Piece extends Sprite {
      * @return true if the piece could fall
      */
     private boolean fall() {
-        if(canBeInPosition(xPos, yPos - 10, shape)) {
+        if(canBeInPosition(xPos, yPos - 10, rotation)) {
             yPos -= 10;
             return true;
         }
@@ -115,7 +145,7 @@ public class Piece extends Sprite {
      */
     protected void fallDown() {
         // Fall until it's not possible
-        while(fall());
+        yPos = getGhostBlockHeight();
         // Harden
         harden();
     }
@@ -134,84 +164,55 @@ public class Piece extends Sprite {
      * Check if the piece can be in the given position
      * @param newX X-coordinate
      * @param newY Y-coordinate
-     * @param newShape Piece's shape
+     * @param newRotation Piece's rotation state
      * @return true if the piece can be in the given position
      */
-    private boolean canBeInPosition(int newX, int newY, int[][] newShape) {
+    private boolean canBeInPosition(int newX, int newY, int newRotation) {
 
-        // Center distance is 1 except in the O-piece
-        int centerDistance = 1;
-        if(newShape.length == 2) {
-            centerDistance = 0;
-        }
-        // Check if every block of the piece can be in the next position
-        for(int i = 0; i < newShape.length; i++) {
-            for(int j = 0; j < newShape[0].length; j++) {
-                if(newShape[i][j] != 0) {
-                    int x = newX + (j - centerDistance) * World.GRID_SIZE;
-                    int y = newY + ((newShape.length - i - 1) - centerDistance) * World.GRID_SIZE;
-                    if(x < 0 || x >= World.WORLD_WIDTH*World.GRID_SIZE || y < 0 ||
-                            (y < World.PLAYABLE_WORLD_HEIGHT*World.GRID_SIZE && world.getPlacedSquares()[y/World.GRID_SIZE][x/World.GRID_SIZE] != 0)) {
-                        return false;
-                    }
-                }
-            }
+        // Column and row of the bottom left corner of the piece's bounding box
+        int column = newX / World.GRID_SIZE + type.getMinXOffset(newRotation);
+        int row = newY / World.GRID_SIZE + type.getMinYOffset(newRotation);
+
+        if(column < 0 || column + type.getWidth(newRotation) > World.WORLD_WIDTH || row < 0)
+            return false;
+
+        // Check every row of the piece against the placed squares of the same row
+        for(int i = 0; i < type.getHeight(newRotation) && row + i < World.PLAYABLE_WORLD_HEIGHT; i++) {
+            if((board.getRowMask(row + i) & (type.getRowMask(newRotation, i) << column)) != 0)
+                return false;
         }
         return true;
     }
 
     /**
-     * Rotate the piece 90 degrees
-     * @param currentShape the current shape of the piece
-     * @return the rotated version of the piece
+     * @return Return the y-coordinate the piece had at the start of the last tick
      */
-    private int[][] rotatePiece(int[][] currentShape) {
-
-        int[][] newPiece = new int[currentShape.length][currentShape[0].length];
+    public int getPreviousyPos() {
+        return previousYPos;
+    }
 
-        if(currentShape.length == 2) {
-            return currentShape;
-        }
-        else if(currentShape.length == 3) {
-            newPiece[0][0] = currentShape[2][0];
-            newPiece[0][1] = currentShape[1][0];
-            newPiece[0][2] = currentShape[0][0];
-            newPiece[1][2] = currentShape[0][1];
-            newPiece[2][2] = currentShape[0][2];
-            newPiece[2][1] = currentShape[1][2];
-            newPiece[2][0] = currentShape[2][2];
-            newPiece[1][0] = currentShape[2][1];
-            newPiece[1][1] = currentShape[1][1];
-        }
-        else {
-            newPiece[0][0] = currentShape[3][0];
-            newPiece[0][1] = currentShape[2][0];
-            newPiece[0][2] = currentShape[1][0];
-            newPiece[0][3] = currentShape[0][0];
-            newPiece[1][3] = currentShape[0][1];
-            newPiece[2][3] = currentShape[0][2];
-            newPiece[3][3] = currentShape[0][3];
-            newPiece[3][2] = currentShape[1][3];
-            newPiece[3][1] = currentShape[2][3];
-            newPiece[3][0] = currentShape[3][3];
-            newPiece[2][0] = currentShape[3][2];
-            newPiece[1][0] = currentShape[3][1];
-            newPiece[1][1] = currentShape[2][1];
-            newPiece[1][2] = currentShape[1][1];
-            newPiece[2][2] = currentShape[1][2];
-            newPiece[2][1] = currentShape[2][2];
+    protected int getFallTime() {
+        return fallTime;
+    }
 
-        }
+    protected int getFallTimer() {
+        return fallTimer;
+    }
 
-        return newPiece;
+    protected int getHardenTimer() {
+        return hardenTimer;
     }
 
     public PieceType getPieceType() {
         return type;
     }
 
+    public int getRotation() {
+        return rotation;
+    }
+
     public int[][] getPieceShape() {
-        return shape;
+        return type.getShape(rotation);
     }
 
     public enum PieceType {
@@ -252,20 +253,147 @@ public class Piece extends Sprite {
                 {0, 0, 0}
         }, 6);
 
+        // Number of rotation states and squares in every piece
+        public static final int ROTATION_COUNT = 4;
+        public static final int CELL_COUNT = 4;
+
         private int[][] pieceShape;
         private int typeIndex;
 
+        // Precomputed tables for every rotation state
+        private final int[][][] rotatedShapes = new int[ROTATION_COUNT][][];
+        // Square offsets from the piece's position in squares
+        private final int[][] cellXOffsets = new int[ROTATION_COUNT][CELL_COUNT];
+        private final int[][] cellYOffsets = new int[ROTATION_COUNT][CELL_COUNT];
+        // Row masks starting from the lowest row, relative to the leftmost column
+        private final int[][] rowMasks = new int[ROTATION_COUNT][];
+        private final int[] minXOffsets = new int[ROTATION_COUNT];
+        private final int[] minYOffsets = new int[ROTATION_COUNT];
+        private final int[] widths = new int[ROTATION_COUNT];
+        // Lowest square of every column relative to the lowest row of the piece
+        private final int[][] columnBottoms = new int[ROTATION_COUNT][];
+
         private PieceType(int[][] pieceShape, int typeIndex) {
             this.pieceShape = pieceShape;
             this.typeIndex = typeIndex;
+
+            // Center distance is 1 except in the O-piece
+            int centerDistance = pieceShape.length == 2 ? 0 : 1;
+
+            int[][] shape = pieceShape;
+            for(int rotation = 0; rotation < ROTATION_COUNT; rotation++) {
+                rotatedShapes[rotation] = shape;
+
+                int cell = 0;
+                int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+                for(int i = 0; i < shape.length; i++) {
+                    for(int j = 0; j < shape[0].length; j++) {
+                        if(shape[i][j] != 0) {
+                            int x = j - centerDistance;
+                            int y = (shape.length - i - 1) - centerDistance;
+                            cellXOffsets[rotation][cell] = x;
+                            cellYOffsets[rotation][cell] = y;
+                            cell++;
+                            minX = Math.min(minX, x);
+                            minY = Math.min(minY, y);
+                            maxX = Math.max(maxX, x);
+                            maxY = Math.max(maxY, y);
+                        }
+                    }
+                }
+
+                minXOffsets[rotation] = minX;
+                minYOffsets[rotation] = minY;
+                widths[rotation] = maxX - minX + 1;
+                rowMasks[rotation] = new int[maxY - minY + 1];
+                for(int c = 0; c < CELL_COUNT; c++) {
+                    rowMasks[rotation][cellYOffsets[rotation][c] - minY] |= 1 << (cellXOffsets[rotation][c] - minX);
+                }
+                columnBottoms[rotation] = new int[widths[rotation]];
+                Arrays.fill(columnBottoms[rotation], Integer.MAX_VALUE);
+                for(int c = 0; c < CELL_COUNT; c++) {
+                    int x = cellXOffsets[rotation][c] - minX;
+                    columnBottoms[rotation][x] = Math.min(columnBottoms[rotation][x], cellYOffsets[rotation][c] - minY);
+                }
+
+                shape = rotateShape(shape);
+            }
+        }
+
+        /**
+         * Rotate a shape 90 degrees clockwise
+         * @param shape the shape to rotate
+         * @return the rotated version of the shape
+         */
+        private static int[][] rotateShape(int[][] shape) {
+
+            int size = shape.length;
+            int[][] rotatedShape = new int[size][size];
+
+            for(int i = 0; i < size; i++) {
+                for(int j = 0; j < size; j++) {
+                    rotatedShape[i][j] = shape[size - j - 1][i];
+                }
+            }
+            return rotatedShape;
         }
 
         public int[][] getShape() {
             return pieceShape;
         }
 
+        public int[][] getShape(int rotation) {
+            return rotatedShapes[rotation];
+        }
+
         public int getTypeIndex() {
             return typeIndex;
         }
+
+        /**
+         * @return X-offset of the square in squares from the piece's position
+         */
+        public int getCellXOffset(int rotation, int cell) {
+            return cellXOffsets[rotation][cell];
+        }
+
+        /**
+         * @return Y-offset of the square in squares from the piece's position
+         */
+        public int getCellYOffset(int rotation, int cell) {
+            return cellYOffsets[rotation][cell];
+        }
+
+        /**
+         * @param row Row counted from the lowest row of the piece
+         * @return Occupancy of the row where bit 0 is the leftmost column of the piece
+         */
+        public int getRowMask(int rotation, int row) {
+            return rowMasks[rotation][row];
+        }
+
+        public int getMinXOffset(int rotation) {
+            return minXOffsets[rotation];
+        }
+
+        public int getMinYOffset(int rotation) {
+            return minYOffsets[rotation];
+        }
+
+        public int getWidth(int rotation) {
+            return widths[rotation];
+        }
+
+        public int getHeight(int rotation) {
+            return rowMasks[rotation].length;
+        }
+
+        /**
+         * @param column Column counted from the leftmost column of the piece
+         * @return Lowest square of the column counted from the lowest row of the piece
+         */
+        public int getColumnBottom(int rotation, int column) {
+            return columnBottoms[rotation][column];
+        }
     }
 }
@@ -0,0 +1,121 @@
+package logic;
+
+// Generates the piece sequence as shuffled bags of all seven piece types
+// The same seed always produces the same sequence and no objects are allocated after construction
+public class PieceGenerator {
+
+    // How many upcoming pieces can always be previewed
+    public static final int PREVIEW_SIZE = 7;
+
+    private static final Piece.PieceType[] PIECE_TYPES = new Piece.PieceType[]{
+            Piece.PieceType.I,
+            Piece.PieceType.J,
+            Piece.PieceType.L,
+            Piece.PieceType.O,
+            Piece.PieceType.S,
+            Piece.PieceType.T,
+            Piece.PieceType.Z,
+    };
+    private static final int BAG_SIZE = PIECE_TYPES.length;
+
+    // Ring buffer of upcoming pieces. Its size is a power of two that fits two bags
+    private final Piece.PieceType[] queue = new Piece.PieceType[16];
+    private int head;
+    private int size;
+
+    private long seed;
+    // State of the SplitMix64 random number generator
+    private long randomState;
+
+    public PieceGenerator(long seed) {
+        reset(seed);
+    }
+
+    /**
+     * Restart the sequence from the given seed
+     */
+    public void reset(long seed) {
+
+        this.seed = seed;
+        randomState = seed;
+        head = 0;
+        size = 0;
+
+        addBag();
+        addBag();
+    }
+
+    /**
+     * Continue from the same point of the same sequence as another generator
+     */
+    public void copyFrom(PieceGenerator other) {
+        System.arraycopy(other.queue, 0, queue, 0, queue.length);
+        head = other.head;
+        size = other.size;
+        seed = other.seed;
+        randomState = other.randomState;
+    }
+
+    /**
+     * @return Remove and return the next piece type
+     */
+    public Piece.PieceType next() {
+
+        Piece.PieceType pieceType = queue[head];
+        head = (head + 1) & (queue.length - 1);
+        size--;
+
+        if(size < PREVIEW_SIZE)
+            addBag();
+
+        return pieceType;
+    }
+
+    /**
+     * @param index 0 for the next piece, 1 for the one after it and so on
+     * @return Return an upcoming piece type without removing it
+     */
+    public Piece.PieceType peek(int index) {
+
+        if(index < 0 || index >= size)
+            throw new IllegalArgumentException("Only "+size+" pieces can be previewed. Index given: "+index);
+
+        return queue[(head + index) & (queue.length - 1)];
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Append a shuffled bag to the end of the queue
+    private void addBag() {
+
+        int start = head + size;
+        for(int i = 0; i < BAG_SIZE; i++) {
+            queue[(start + i) & (queue.length - 1)] = PIECE_TYPES[i];
+        }
+
+        // Fisher-Yates shuffle in place
+        for(int i = BAG_SIZE - 1; i > 0; i--) {
+            int a = (start + i) & (queue.length - 1);
+            int b = (start + nextInt(i + 1)) & (queue.length - 1);
+            Piece.PieceType temp = queue[a];
+            queue[a] = queue[b];
+            queue[b] = temp;
+        }
+
+        size += BAG_SIZE;
+    }
+
+    // Return a random number between 0 (inclusive) and bound (exclusive)
+    private int nextInt(int bound) {
+
+        randomState += 0x9E3779B97F4A7C15L;
+        long z = randomState;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+}
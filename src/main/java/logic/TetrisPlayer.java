@@ -6,55 +6,86 @@ public class TetrisPlayer implements KeyListenerInterface {
 
     Piece currentPiece;
     World world;
+    // Whether the arrow down is held. New pieces start falling fast if it is
+    boolean fallingFast;
 
     protected TetrisPlayer(World world) {
         this.world = world;
     }
 
     protected void updateCurrentPiece(Piece p) {
-        boolean fallingFast = currentPiece != null && currentPiece.isFallingFast();
         currentPiece = p;
         currentPiece.fallFast(fallingFast);
     }
 
+    protected void reset() {
+        currentPiece = null;
+        fallingFast = false;
+    }
+
     @Override
     public void onKeyPressed(int key, int action) {
 
-        if(currentPiece == null)
-            return;
-
         // Arrow down
         if(key == 264) {
             if(action == 1) {
-                currentPiece.fallFast(true);
+                fallFast(true);
             }
             else if(action == 0) {
-                currentPiece.fallFast(false);
+                fallFast(false);
             }
         }
         // Arrow up
         else if(key == 265) {
             if(action == 1) {
-                currentPiece.rotate();
+                rotate();
             }
         }
         // Arrow left and right
         else if(key == 263 || key == 262) {
             if(action != 0) {
-                currentPiece.move(key == 262);
+                move(key == 262);
             }
         }
         // Space
         else if(key == 32) {
             if(action == 1) {
-                currentPiece.fallDown();
+                hardDrop();
             }
         }
         // C
         else if(key == 67) {
             if(action == 1) {
-                world.storeCurrentPiece();
+                storePiece();
             }
         }
     }
+
+    // Actions that can also be used without a keyboard, e.g. by bots
+
+    public void rotate() {
+        if(currentPiece != null)
+            currentPiece.rotate();
+    }
+
+    public void move(boolean right) {
+        if(currentPiece != null)
+            currentPiece.move(right);
+    }
+
+    public void fallFast(boolean fallFast) {
+        fallingFast = fallFast;
+        if(currentPiece != null)
+            currentPiece.fallFast(fallFast);
+    }
+
+    public void hardDrop() {
+        if(currentPiece != null)
+            currentPiece.fallDown();
+    }
+
+    public void storePiece() {
+        if(currentPiece != null)
+            world.storeCurrentPiece();
+    }
 }
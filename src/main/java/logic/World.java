@@ -1,106 +1,110 @@
 package logic;
 
-import audio.AudioPlayer;
-import audio.Sound;
-
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
 
 // This class handles all the basic game logic and stores most of the relevant game objects
-public class World {
+// It doesn't depend on audio or rendering, so it can also be run headless
+public class World implements BoardView {
 
     public static final int WORLD_WIDTH = 10;
     public static final int WORLD_HEIGHT = 20;
     public static final int PLAYABLE_WORLD_HEIGHT = 25;
     // Coordinates between two adjacent squares
     public static final int GRID_SIZE = 10;
-
-    private final Piece.PieceType[] pieceTypes = new Piece.PieceType[]{
-            Piece.PieceType.I,
-            Piece.PieceType.J,
-            Piece.PieceType.L,
-            Piece.PieceType.O,
-            Piece.PieceType.S,
-            Piece.PieceType.T,
-            Piece.PieceType.Z,
-    };
+    // Column and row where new pieces appear. A piece that is taken out of the hold appears one row lower
+    public static final int SPAWN_COLUMN = 4;
+    public static final int SPAWN_ROW = WORLD_HEIGHT;
+    public static final int STORED_PIECE_SPAWN_ROW = WORLD_HEIGHT - 1;
+    // Row mask with every column occupied
+    public static final int FULL_ROW_MASK = (1 << WORLD_WIDTH) - 1;
 
     // Other
     private final double fallSpeedMultiplier = 60d/Math.log(201);
 
-    private final AudioPlayer audioPlayer;
-    private int[][] placedSquares;
+    // Occupancy of each row as a bitmask where bit n is column n
+    private int[] rowMasks;
+    // Type index + 1 of each placed square, 0 if the square is empty
+    private byte[][] squareColors;
+    // Number of events that are kept for the consumers of the world
+    private static final int EVENT_BUFFER_CAPACITY = 256;
+
+    // Rows that are being cleared on this tick, from the bottom up
+    private final int[] clearedRows = new int[PLAYABLE_WORLD_HEIGHT];
+    private int clearedRowCount;
+    // Rows cleared on this tick that are waiting to be reused as empty rows
+    private final byte[][] emptyRows = new byte[PLAYABLE_WORLD_HEIGHT][];
+    // Bit n is set if row n of squareColors is shared with a snapshot and has to be copied before it is modified
+    private int sharedRows;
+    // Zobrist hash of the occupied squares
+    private long boardHash;
+    // Occupancy of each column as a bitmask where bit n is row n
+    private int[] columnMasks;
+    // Features derived from the column masks
+    private final int[] columnHeights = new int[WORLD_WIDTH];
+    private int holeCount;
+    private int maxHeight;
     private Piece currentPiece;
     private Piece.PieceType storedPieceType;
     private boolean canStorePiece;
     private TetrisPlayer tetrisPlayer;
     private WorldToGameInterface game;
-    private ArrayList<Piece.PieceType> currentPieceList;
-    private ArrayList<Piece.PieceType> nextPieceList;
+    private PieceGenerator pieceGenerator;
     private int rowsCleared;
+    private int piecesPlaced;
+    private int tickCount;
     private int currentFallTime;
-    private boolean rowCleared;
-    private boolean pieceHardened;
     private boolean gameEnded;
+    private final WorldEventBuffer events = new WorldEventBuffer(EVENT_BUFFER_CAPACITY);
 
-    public World(WorldToGameInterface game, AudioPlayer audioPlayer) {
+    public World(WorldToGameInterface game) {
 
         this.game = game;
-        this.audioPlayer = audioPlayer;
         init();
-        game.addKeyListener(tetrisPlayer);
     }
 
     // Init
     private void init() {
 
-        resetState();
+        pieceGenerator = new PieceGenerator(createSeed());
+        resetState(pieceGenerator.getSeed());
         tetrisPlayer = new TetrisPlayer(this);
     }
 
-    private void resetState() {
+    private void resetState(long seed) {
 
-        placedSquares = new int[PLAYABLE_WORLD_HEIGHT][WORLD_WIDTH];
-
-        // Set all the arrays values to 0
-        for(int i = 0; i < placedSquares.length; i++) {
-            for(int j = 0; j < placedSquares[0].length; j++) {
-                placedSquares[i][j] = 0;
-            }
-        }
+        rowMasks = new int[PLAYABLE_WORLD_HEIGHT];
+        squareColors = new byte[PLAYABLE_WORLD_HEIGHT][WORLD_WIDTH];
+        sharedRows = 0;
+        boardHash = 0;
+        columnMasks = new int[WORLD_WIDTH];
+        updateColumnFeatures();
 
         currentPiece = null;
         storedPieceType = null;
         canStorePiece = false;
-        rowCleared = false;
-        pieceHardened = false;
+        clearedRowCount = 0;
 
-        currentPieceList = new ArrayList<Piece.PieceType>(Arrays.asList(pieceTypes));
-        nextPieceList = new ArrayList<Piece.PieceType>(Arrays.asList(pieceTypes));
-        Collections.shuffle(currentPieceList);
-        Collections.shuffle(nextPieceList);
+        pieceGenerator.reset(seed);
 
         rowsCleared = 0;
+        piecesPlaced = 0;
+        tickCount = 0;
         currentFallTime = -1;
         updateFallTime();
 
         gameEnded = false;
 
+        // Forget the piece of the previous game so that input can't affect the new one
+        if(tetrisPlayer != null)
+            tetrisPlayer.reset();
     }
 
     // Called every time the world should update
     public void tick() {
 
-        if(rowCleared) {
-            rowCleared = false;
-            audioPlayer.playSound(Sound.Clear_Sound);
-        }
-        if(pieceHardened) {
-            pieceHardened = false;
-            if(!rowCleared)
-                audioPlayer.playSound(Sound.Place_Sound);
-        }
+        tickCount++;
+        clearedRowCount = 0;
 
         if(currentPiece == null)
             createNewPiece();
@@ -111,47 +115,56 @@ public class World {
 
         if(gameShouldEnd() && !gameEnded) {
             gameEnded = true;
+            events.publish(WorldEvent.GameOver, tickCount, null, 0);
             game.gameEnded();
         }
     }
 
+    /**
+     * Reset the world with a random seed
+     */
     public void reset() {
 
-        resetState();
+        resetState(createSeed());
+    }
+
+    /**
+     * Reset the world so that the pieces come in the same order as in every other game with the same seed
+     */
+    public void reset(long seed) {
+
+        resetState(seed);
+    }
+
+    private long createSeed() {
+        return ThreadLocalRandom.current().nextLong();
     }
 
     private boolean gameShouldEnd() {
-        for(int i = PLAYABLE_WORLD_HEIGHT-1; i >= WORLD_HEIGHT; i--) {
-            for(int j = 0; j < placedSquares[0].length; j++) {
-                if(placedSquares[i][j] != 0) {
-                    // Game should end
-                    return true;
-                }
-            }
-        }
-        return false;
+        // Game should end if anything is above the visible part of the world
+        return maxHeight > WORLD_HEIGHT;
     }
 
+    // Find every complete row in one sweep and remove them all at once
     private void checkForCompleteRows() {
-        for(int i = placedSquares.length - 1; i >= 0; i--) {
-            for(int j = 0; j < placedSquares[0].length; j++) {
-                if(placedSquares[i][j] == 0)
-                    break;
-
-                if(j == placedSquares[0].length-1) {
-                    // Row is complete
-                    removeRow(i);
-                    rowsCleared++;
-                    updateFallTime();
-                    rowCleared = true;
-                    // Check the same row again
-                    i++;
-                    break;
-                }
-            }
+
+        for(int i = 0; i < rowMasks.length; i++) {
+            if(rowMasks[i] == FULL_ROW_MASK)
+                clearedRows[clearedRowCount++] = i;
+        }
+        if(clearedRowCount == 0)
+            return;
+
+        removeClearedRows();
+
+        int clearedRowMask = 0;
+        for(int i = 0; i < clearedRowCount; i++) {
+            clearedRowMask |= 1 << clearedRows[i];
         }
-        if(rowCleared)
-            System.out.println("Rows cleared: "+rowsCleared);
+
+        rowsCleared += clearedRowCount;
+        updateFallTime();
+        events.publish(WorldEvent.LinesCleared, tickCount, null, clearedRowMask);
     }
 
     // Update fall time
@@ -166,37 +179,79 @@ public class World {
             currentFallTime = calculatedFallTime;
     }
 
-    // Remove a row
-    private void removeRow(int height) {
+    // Compact the rows that were not cleared downward in place and move the cleared rows to the top as empty rows
+    private void removeClearedRows() {
 
-        int[][] newPlacedSquares = new int[placedSquares.length][placedSquares[0].length];
+        int lowestClearedRow = clearedRows[0];
 
-        for(int i = 0; i < placedSquares.length-1; i++) {
-            if(i >= height) {
-                newPlacedSquares[i] = placedSquares[i+1];
+        // Rows from the lowest cleared one upward change, so take them out of the hash before and add them back after
+        for(int i = lowestClearedRow; i < rowMasks.length; i++) {
+            boardHash ^= Zobrist.rowKey(i, rowMasks[i]);
+        }
+
+        int newSharedRows = sharedRows & ((1 << lowestClearedRow) - 1);
+        int write = lowestClearedRow;
+        int cleared = 0;
+        for(int read = lowestClearedRow; read < rowMasks.length; read++) {
+            boolean shared = (sharedRows & (1 << read)) != 0;
+            if(cleared < clearedRowCount && clearedRows[cleared] == read) {
+                // Reuse the cleared row unless a snapshot still uses it
+                if(shared) {
+                    emptyRows[cleared] = new byte[WORLD_WIDTH];
+                }
+                else {
+                    emptyRows[cleared] = squareColors[read];
+                    Arrays.fill(emptyRows[cleared], (byte) 0);
+                }
+                cleared++;
             }
             else {
-                newPlacedSquares[i] = placedSquares[i];
+                rowMasks[write] = rowMasks[read];
+                squareColors[write] = squareColors[read];
+                if(shared)
+                    newSharedRows |= 1 << write;
+                write++;
             }
         }
+        for(int i = 0; i < clearedRowCount; i++, write++) {
+            rowMasks[write] = 0;
+            squareColors[write] = emptyRows[i];
+            emptyRows[i] = null;
+        }
+        sharedRows = newSharedRows;
 
-        // Empty the top row
-        for(int i = 0; i < newPlacedSquares[0].length; i++) {
-            newPlacedSquares[newPlacedSquares.length-1][i] = 0;
+        for(int i = lowestClearedRow; i < rowMasks.length; i++) {
+            boardHash ^= Zobrist.rowKey(i, rowMasks[i]);
         }
 
-        placedSquares = newPlacedSquares;
+        // Remove the cleared rows from every column, starting from the highest one
+        for(int i = 0; i < WORLD_WIDTH; i++) {
+            int columnMask = columnMasks[i];
+            for(int j = clearedRowCount - 1; j >= 0; j--) {
+                int row = clearedRows[j];
+                columnMask = (columnMask & ((1 << row) - 1)) | ((columnMask >>> (row + 1)) << row);
+            }
+            columnMasks[i] = columnMask;
+        }
+        updateColumnFeatures();
+    }
+
+    // Update the heights, hole count and max height from the column masks
+    private void updateColumnFeatures() {
+        holeCount = 0;
+        maxHeight = 0;
+        for(int i = 0; i < WORLD_WIDTH; i++) {
+            int height = Integer.SIZE - Integer.numberOfLeadingZeros(columnMasks[i]);
+            columnHeights[i] = height;
+            holeCount += height - Integer.bitCount(columnMasks[i]);
+            maxHeight = Math.max(maxHeight, height);
+        }
     }
 
     private void createNewPiece() {
-        currentPiece = new Piece(4*GRID_SIZE, WORLD_HEIGHT*GRID_SIZE, currentPieceList.remove(0), this, currentFallTime);
+        currentPiece = new Piece(SPAWN_COLUMN*GRID_SIZE, SPAWN_ROW*GRID_SIZE, pieceGenerator.next(), this, currentFallTime);
         tetrisPlayer.updateCurrentPiece(currentPiece);
-
-        if(currentPieceList.size() == 0) {
-            currentPieceList = nextPieceList;
-            nextPieceList = new ArrayList<Piece.PieceType>(Arrays.asList(pieceTypes));
-            Collections.shuffle(nextPieceList);
-        }
+        events.publish(WorldEvent.PieceSpawned, tickCount, currentPiece.getPieceType(), 0);
 
         if(!canStorePiece)
             canStorePiece = true;
@@ -204,53 +259,141 @@ public class World {
 
     protected void hardenAPiece(Piece piece) {
 
-        int[][] shape = piece.getPieceShape();
-
-        // Center distance is 1 except in the O-piece
-        int centerDistance = 1;
-        if(shape.length == 2) {
-            centerDistance = 0;
-        }
-
-        for(int i = 0; i < shape.length; i++) {
-            for(int j = 0; j < shape[0].length; j++) {
-                if(shape[i][j] != 0) {
-                    int x = piece.getxPos() + (j - centerDistance) * GRID_SIZE;
-                    int y = piece.getyPos() + ((shape.length - i - 1) - centerDistance) * GRID_SIZE;
-                    if(x >= 0 && x < WORLD_WIDTH*GRID_SIZE &&
-                            y >= 0 && y < PLAYABLE_WORLD_HEIGHT*GRID_SIZE &&
-                            placedSquares[y/GRID_SIZE][x/GRID_SIZE] == 0) {
-
-                        placedSquares[y/GRID_SIZE][x/GRID_SIZE] = piece.getPieceType().getTypeIndex()+1;
-                    }
-                }
+        Piece.PieceType type = piece.getPieceType();
+        int rotation = piece.getRotation();
+
+        for(int i = 0; i < Piece.PieceType.CELL_COUNT; i++) {
+            int column = piece.getxPos() / GRID_SIZE + type.getCellXOffset(rotation, i);
+            int row = piece.getyPos() / GRID_SIZE + type.getCellYOffset(rotation, i);
+            if(column >= 0 && column < WORLD_WIDTH &&
+                    row >= 0 && row < PLAYABLE_WORLD_HEIGHT &&
+                    (rowMasks[row] & (1 << column)) == 0) {
+
+                rowMasks[row] |= 1 << column;
+                columnMasks[column] |= 1 << row;
+                unshareRow(row);
+                squareColors[row][column] = (byte) (type.getTypeIndex()+1);
+                boardHash ^= Zobrist.cellKey(row, column);
             }
         }
 
+        updateColumnFeatures();
+
         currentPiece = null;
-        pieceHardened = true;
+        piecesPlaced++;
+        events.publish(WorldEvent.PieceLocked, tickCount, type, 0);
+    }
+
+    // Copy a row that is shared with a snapshot so that it can be modified
+    private void unshareRow(int row) {
+        if((sharedRows & (1 << row)) != 0) {
+            squareColors[row] = squareColors[row].clone();
+            sharedRows &= ~(1 << row);
+        }
     }
 
     public void storeCurrentPiece() {
 
-        if(!canStorePiece)
+        if(!canStorePiece || currentPiece == null)
             return;
 
         Piece.PieceType newPieceType = storedPieceType;
         storedPieceType = currentPiece.getPieceType();
+        events.publish(WorldEvent.Hold, tickCount, storedPieceType, 0);
 
         // Create compleately new piece if there is no stored piece
         if(newPieceType == null) {
             createNewPiece();
         }
         else {
-            currentPiece = new Piece(4*GRID_SIZE, 19*GRID_SIZE, newPieceType, this, currentFallTime);
+            currentPiece = new Piece(SPAWN_COLUMN*GRID_SIZE, STORED_PIECE_SPAWN_ROW*GRID_SIZE, newPieceType, this, currentFallTime);
             tetrisPlayer.updateCurrentPiece(currentPiece);
         }
 
         canStorePiece = false;
     }
 
+    /**
+     * @return Return a new snapshot of the current state
+     */
+    public WorldSnapshot createSnapshot() {
+        WorldSnapshot snapshot = new WorldSnapshot();
+        captureSnapshot(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Copy the current state into an existing snapshot
+     * The rows of the board are shared with the snapshot until the world modifies them, so capturing is cheap
+     */
+    public void captureSnapshot(WorldSnapshot snapshot) {
+
+        System.arraycopy(rowMasks, 0, snapshot.rowMasks, 0, rowMasks.length);
+        System.arraycopy(squareColors, 0, snapshot.squareColors, 0, squareColors.length);
+        sharedRows = (1 << PLAYABLE_WORLD_HEIGHT) - 1;
+        snapshot.boardHash = boardHash;
+        System.arraycopy(columnMasks, 0, snapshot.columnMasks, 0, WORLD_WIDTH);
+        snapshot.holeCount = holeCount;
+        snapshot.maxHeight = maxHeight;
+
+        snapshot.pieceType = currentPiece == null ? null : currentPiece.getPieceType();
+        if(currentPiece != null) {
+            snapshot.pieceX = currentPiece.getxPos();
+            snapshot.pieceY = currentPiece.getyPos();
+            snapshot.piecePreviousY = currentPiece.getPreviousyPos();
+            snapshot.pieceRotation = currentPiece.getRotation();
+            snapshot.pieceFallTime = currentPiece.getFallTime();
+            snapshot.pieceFallTimer = currentPiece.getFallTimer();
+            snapshot.pieceHardenTimer = currentPiece.getHardenTimer();
+            snapshot.pieceFallFast = currentPiece.isFallingFast();
+            snapshot.pieceGhostY = currentPiece.getGhostBlockHeight();
+        }
+
+        snapshot.storedPieceType = storedPieceType;
+        snapshot.canStorePiece = canStorePiece;
+        snapshot.pieceGenerator.copyFrom(pieceGenerator);
+        snapshot.playerFallingFast = tetrisPlayer.fallingFast;
+
+        snapshot.rowsCleared = rowsCleared;
+        snapshot.piecesPlaced = piecesPlaced;
+        snapshot.tickCount = tickCount;
+        snapshot.currentFallTime = currentFallTime;
+        snapshot.gameEnded = gameEnded;
+    }
+
+    /**
+     * Return to the state of a snapshot. The snapshot isn't modified and can be restored again
+     */
+    public void restoreSnapshot(WorldSnapshot snapshot) {
+
+        System.arraycopy(snapshot.rowMasks, 0, rowMasks, 0, rowMasks.length);
+        System.arraycopy(snapshot.squareColors, 0, squareColors, 0, squareColors.length);
+        sharedRows = (1 << PLAYABLE_WORLD_HEIGHT) - 1;
+        boardHash = snapshot.boardHash;
+        System.arraycopy(snapshot.columnMasks, 0, columnMasks, 0, WORLD_WIDTH);
+        updateColumnFeatures();
+
+        if(snapshot.pieceType == null) {
+            currentPiece = null;
+        }
+        else {
+            currentPiece = new Piece(snapshot.pieceX, snapshot.pieceY, snapshot.pieceType, this, snapshot.pieceFallTime);
+            currentPiece.restore(snapshot.pieceRotation, snapshot.piecePreviousY, snapshot.pieceFallTimer, snapshot.pieceHardenTimer, snapshot.pieceFallFast);
+        }
+
+        storedPieceType = snapshot.storedPieceType;
+        canStorePiece = snapshot.canStorePiece;
+        pieceGenerator.copyFrom(snapshot.pieceGenerator);
+        tetrisPlayer.currentPiece = currentPiece;
+        tetrisPlayer.fallingFast = snapshot.playerFallingFast;
+
+        rowsCleared = snapshot.rowsCleared;
+        piecesPlaced = snapshot.piecesPlaced;
+        tickCount = snapshot.tickCount;
+        currentFallTime = snapshot.currentFallTime;
+        gameEnded = snapshot.gameEnded;
+    }
+
     /**
      * @return Return a copy of the current piece
      */
@@ -259,14 +402,107 @@ public class World {
     }
 
     /**
-     * @return Return a copy of the current placedSquares object
+     * @return Return a copy of the placed squares where each value is the type index + 1 of the square, or 0 if empty
      */
     public int[][] getPlacedSquares() {
-        return placedSquares.clone();
+        int[][] placedSquares = new int[PLAYABLE_WORLD_HEIGHT][WORLD_WIDTH];
+        for(int i = 0; i < placedSquares.length; i++) {
+            for(int j = 0; j < placedSquares[0].length; j++) {
+                placedSquares[i][j] = squareColors[i][j];
+            }
+        }
+        return placedSquares;
+    }
+
+    /**
+     * @return Return a read-only view of the placed squares that doesn't copy the board
+     */
+    public BoardView getBoard() {
+        return this;
+    }
+
+    /**
+     * @param row Row index counted from the bottom
+     * @return Occupancy of the row as a bitmask where bit n is column n
+     */
+    @Override
+    public int getRowMask(int row) {
+        return rowMasks[row];
+    }
+
+    @Override
+    public boolean isOccupied(int column, int row) {
+        return (rowMasks[row] & (1 << column)) != 0;
+    }
+
+    /**
+     * @return Type index + 1 of the square, or 0 if the square is empty
+     */
+    @Override
+    public int getSquare(int column, int row) {
+        return squareColors[row][column];
+    }
+
+    /**
+     * @return Height of the highest square in the column, 0 if the column is empty
+     */
+    @Override
+    public int getColumnHeight(int column) {
+        return columnHeights[column];
+    }
+
+    /**
+     * @return Number of empty squares that are below the top of their column
+     */
+    @Override
+    public int getHoleCount() {
+        return holeCount;
+    }
+
+    /**
+     * @return Height of the highest column
+     */
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * @return Zobrist hash of the occupied squares. It is kept up to date as pieces harden and rows are removed
+     */
+    @Override
+    public long getBoardHash() {
+        return boardHash;
+    }
+
+    public TetrisPlayer getTetrisPlayer() {
+        return tetrisPlayer;
     }
 
     public Piece.PieceType getNextPieceType() {
-        return currentPieceList.size() == 0 ? nextPieceList.get(0) : currentPieceList.get(0);
+        return pieceGenerator.peek(0);
+    }
+
+    /**
+     * @param index 0 for the next piece. Indices below PieceGenerator.PREVIEW_SIZE can always be previewed
+     * @return Return an upcoming piece type
+     */
+    public Piece.PieceType getNextPieceType(int index) {
+        return pieceGenerator.peek(index);
+    }
+
+    /**
+     * @return Return the seed of the current game
+     */
+    public long getSeed() {
+        return pieceGenerator.getSeed();
+    }
+
+    /**
+     * @return true if the current piece can be swapped with the stored piece
+     */
+    public boolean canStorePiece() {
+        return canStorePiece && currentPiece != null;
     }
 
     public Piece.PieceType getStoredPieceType() {
@@ -277,11 +513,25 @@ public class World {
         return rowsCleared;
     }
 
-    public boolean wasRowCleared() {
-        return rowCleared;
+    public int getPiecesPlaced() {
+        return piecesPlaced;
     }
 
-    public boolean wasPieceHardened() {
-        return pieceHardened;
+    /**
+     * @return Return how many times the world has ticked since it was reset
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    public boolean hasGameEnded() {
+        return gameEnded;
+    }
+
+    /**
+     * @return Return the events of the world. Consumers read them with their own cursor
+     */
+    public WorldEventBuffer getEvents() {
+        return events;
     }
 }
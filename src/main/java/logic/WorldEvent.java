@@ -0,0 +1,21 @@
+package logic;
+
+// Types of the events a world publishes to its WorldEventBuffer
+public enum WorldEvent {
+    // A new piece appeared at the top of the world
+    PieceSpawned,
+    // The current piece turned into placed squares
+    PieceLocked,
+    // One or more complete rows were removed
+    LinesCleared,
+    // The current piece was stored and replaced
+    Hold,
+    // The stack reached above the visible part of the world
+    GameOver;
+
+    private static final WorldEvent[] VALUES = values();
+
+    static WorldEvent fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,182 @@
+package logic;
+
+import java.lang.invoke.VarHandle;
+
+// A preallocated ring buffer of world events with one producer and any number of consumers
+// The world publishes events from the tick without allocating or waiting. Every consumer reads through its own Cursor,
+// so a slow consumer can't hold back the world or the other consumers. If a consumer falls behind by the capacity,
+// the oldest events are overwritten and the consumer skips them
+public class WorldEventBuffer {
+
+    // Piece types in the order of their type index
+    private static final Piece.PieceType[] PIECE_TYPES = Piece.PieceType.values();
+
+    private final int mask;
+
+    // Event data in parallel arrays indexed by sequence & mask
+    private final byte[] types;
+    private final int[] ticks;
+    // Type index of the piece, -1 if the event has no piece
+    private final byte[] pieceTypes;
+    // Bit n is set if row n was cleared. Rows are indices from before the removal
+    private final int[] clearedRows;
+
+    // Number of published events. Written only by the producer after the event data
+    private volatile long sequence;
+
+    /**
+     * @param capacity Number of events that are kept. Has to be a power of two
+     */
+    public WorldEventBuffer(int capacity) {
+
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity has to be a power of two. Capacity given: "+capacity);
+
+        mask = capacity - 1;
+        types = new byte[capacity];
+        ticks = new int[capacity];
+        pieceTypes = new byte[capacity];
+        clearedRows = new int[capacity];
+    }
+
+    /**
+     * Publish an event. Only one thread may publish
+     * @param pieceType The piece of the event or null
+     * @param clearedRowMask Cleared rows as a bitmask, 0 if no rows were cleared
+     */
+    void publish(WorldEvent type, int tick, Piece.PieceType pieceType, int clearedRowMask) {
+
+        long next = sequence;
+        int index = (int) next & mask;
+        // The slot may not be overwritten before the consumers can see the sequence that tells them it is being overwritten
+        VarHandle.storeStoreFence();
+        types[index] = (byte) type.ordinal();
+        ticks[index] = tick;
+        pieceTypes[index] = (byte) (pieceType == null ? -1 : pieceType.getTypeIndex());
+        clearedRows[index] = clearedRowMask;
+        // The volatile write makes the event data visible to the consumers
+        sequence = next + 1;
+    }
+
+    /**
+     * @return Return a cursor that receives the events published after this call
+     */
+    public Cursor createCursor() {
+        return new Cursor(sequence);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    // Reads the events of the buffer in order. A cursor is used by one consumer thread only
+    public class Cursor {
+
+        private long position;
+        private long missedEvents;
+
+        // The event that was read last
+        private WorldEvent type;
+        private int tick;
+        private int pieceType;
+        private int clearedRowMask;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Read the next event. Never waits for the producer
+         * @return true if there was an event. Its data can be read with the getters until next() is called again
+         */
+        public boolean next() {
+
+            while(true) {
+                long published = sequence;
+                if(position == published)
+                    return false;
+
+                // Skip the events that have already been overwritten. The slot of the oldest event is also the slot
+                // the producer writes next, so it can be half written
+                if(published - position >= mask + 1) {
+                    missedEvents += published - position - mask;
+                    position = published - mask;
+                }
+
+                int index = (int) position & mask;
+                int readType = types[index];
+                int readTick = ticks[index];
+                int readPieceType = pieceTypes[index];
+                int readClearedRowMask = clearedRows[index];
+
+                // The producer may have overwritten the slot while it was read.
+                // The fence keeps the slot from being read after the sequence
+                VarHandle.loadLoadFence();
+                if(sequence - position >= mask + 1)
+                    continue;
+
+                type = WorldEvent.fromOrdinal(readType);
+                tick = readTick;
+                pieceType = readPieceType;
+                clearedRowMask = readClearedRowMask;
+                position++;
+                return true;
+            }
+        }
+
+        public WorldEvent getType() {
+            return type;
+        }
+
+        /**
+         * @return Return the tick of the world when the event happened
+         */
+        public int getTick() {
+            return tick;
+        }
+
+        /**
+         * @return Return the piece of a PieceSpawned, PieceLocked or Hold event, otherwise null
+         */
+        public Piece.PieceType getPieceType() {
+            return pieceType < 0 ? null : PIECE_TYPES[pieceType];
+        }
+
+        /**
+         * @return Return the number of rows removed by a LinesCleared event
+         */
+        public int getClearedRowCount() {
+            return Integer.bitCount(clearedRowMask);
+        }
+
+        /**
+         * @param index Index between 0 and getClearedRowCount() - 1, from the bottom up
+         * @return Return the index the cleared row had before it was removed
+         */
+        public int getClearedRow(int index) {
+
+            if(index < 0 || index >= getClearedRowCount())
+                throw new IllegalArgumentException("Index has to be between 0 and "+(getClearedRowCount()-1)+". Index given: "+index);
+
+            int rows = clearedRowMask;
+            for(int i = 0; i < index; i++) {
+                rows &= rows - 1;
+            }
+            return Integer.numberOfTrailingZeros(rows);
+        }
+
+        /**
+         * @return Return the bitmask of the rows removed by a LinesCleared event, bit n for row n
+         */
+        public int getClearedRowMask() {
+            return clearedRowMask;
+        }
+
+        /**
+         * @return Return the number of events this cursor has skipped because it fell behind
+         */
+        public long getMissedEvents() {
+            return missedEvents;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package logic;
+
+// The complete state of a world at one tick. A world restored from a snapshot continues exactly like the original
+// Snapshots are filled by World.captureSnapshot and can be reused. They are never modified by the world:
+// the rows of squareColors are shared with the world, which copies a row before it writes to it
+public class WorldSnapshot implements BoardView {
+
+    // Board
+    final int[] rowMasks = new int[World.PLAYABLE_WORLD_HEIGHT];
+    final byte[][] squareColors = new byte[World.PLAYABLE_WORLD_HEIGHT][];
+    long boardHash;
+    final int[] columnMasks = new int[World.WORLD_WIDTH];
+    int holeCount;
+    int maxHeight;
+
+    // Current piece. The type is null if there is no current piece
+    Piece.PieceType pieceType;
+    int pieceX;
+    int pieceY;
+    int piecePreviousY;
+    int pieceRotation;
+    int pieceFallTime;
+    int pieceFallTimer;
+    int pieceHardenTimer;
+    boolean pieceFallFast;
+    // Y-coordinate where the piece would land. Only used for drawing
+    int pieceGhostY;
+
+    // Hold and upcoming pieces
+    Piece.PieceType storedPieceType;
+    boolean canStorePiece;
+    final PieceGenerator pieceGenerator = new PieceGenerator(0);
+
+    // Player input
+    boolean playerFallingFast;
+
+    // Progress
+    int rowsCleared;
+    int piecesPlaced;
+    int tickCount;
+    int currentFallTime;
+    boolean gameEnded;
+
+    @Override
+    public int getRowMask(int row) {
+        return rowMasks[row];
+    }
+
+    @Override
+    public boolean isOccupied(int column, int row) {
+        return (rowMasks[row] & (1 << column)) != 0;
+    }
+
+    @Override
+    public int getSquare(int column, int row) {
+        return squareColors[row][column];
+    }
+
+    @Override
+    public long getBoardHash() {
+        return boardHash;
+    }
+
+    @Override
+    public int getColumnHeight(int column) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(columnMasks[column]);
+    }
+
+    @Override
+    public int getHoleCount() {
+        return holeCount;
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * @return Return the type of the current piece, or null if there was no current piece
+     */
+    public Piece.PieceType getPieceType() {
+        return pieceType;
+    }
+
+    public int getPieceX() {
+        return pieceX;
+    }
+
+    public int getPieceY() {
+        return pieceY;
+    }
+
+    /**
+     * @return Return the y-coordinate the current piece had on the previous tick
+     */
+    public int getPreviousPieceY() {
+        return piecePreviousY;
+    }
+
+    public int getPieceRotation() {
+        return pieceRotation;
+    }
+
+    /**
+     * @return Return the y-coordinate the current piece would land on
+     */
+    public int getGhostPieceY() {
+        return pieceGhostY;
+    }
+
+    public Piece.PieceType getStoredPieceType() {
+        return storedPieceType;
+    }
+
+    public Piece.PieceType getNextPieceType(int index) {
+        return pieceGenerator.peek(index);
+    }
+
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    public int getScore() {
+        return rowsCleared;
+    }
+
+    public int getPiecesPlaced() {
+        return piecesPlaced;
+    }
+
+    public boolean hasGameEnded() {
+        return gameEnded;
+    }
+}
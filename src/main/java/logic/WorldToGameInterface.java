@@ -1,8 +1,7 @@
 package logic;
 
-import userInput.KeyListenerInterface;
-
+// Notifies the game when its world ends
+// Everything else that happens in the world is published to World.getEvents()
 public interface WorldToGameInterface {
-    public void addKeyListener(KeyListenerInterface keyListenerInterface);
     public void gameEnded();
 }
@@ -0,0 +1,52 @@
+package logic;
+
+// Zobrist keys for hashing boards. The hash of a board is the XOR of the keys of its occupied squares,
+// so it can be updated incrementally whenever squares are set or rows move
+public class Zobrist {
+
+    private static final long[][] CELL_KEYS = new long[World.PLAYABLE_WORLD_HEIGHT][World.WORLD_WIDTH];
+
+    static {
+        // Fixed seed so that hashes are the same in every run
+        long state = 0x5DEECE66DL;
+        for(int i = 0; i < CELL_KEYS.length; i++) {
+            for(int j = 0; j < CELL_KEYS[0].length; j++) {
+                state += 0x9E3779B97F4A7C15L;
+                long z = state;
+                z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+                z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+                CELL_KEYS[i][j] = z ^ (z >>> 31);
+            }
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    public static long cellKey(int row, int column) {
+        return CELL_KEYS[row][column];
+    }
+
+    /**
+     * @return XOR of the keys of every occupied square in the row
+     */
+    public static long rowKey(int row, int rowMask) {
+        long key = 0;
+        while(rowMask != 0) {
+            key ^= CELL_KEYS[row][Integer.numberOfTrailingZeros(rowMask)];
+            rowMask &= rowMask - 1;
+        }
+        return key;
+    }
+
+    /**
+     * @return Hash of the whole board computed from scratch
+     */
+    public static long hash(int[] rowMasks) {
+        long hash = 0;
+        for(int i = 0; i < rowMasks.length; i++) {
+            hash ^= rowKey(i, rowMasks[i]);
+        }
+        return hash;
+    }
+}
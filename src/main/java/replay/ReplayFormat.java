@@ -0,0 +1,57 @@
+package replay;
+
+import java.nio.ByteBuffer;
+
+// The binary replay format
+//
+// Header: magic (int), version (byte), seed (long)
+// Events: varint((tick delta << 2) | action), varint(zigzag(key))
+// End:    varint((tick delta << 2) | END_OF_GAME), varint(score)
+//
+// The tick of an event is the world's tick count when the event arrived,
+// so the event has to be applied before the world ticks for the next time
+public class ReplayFormat {
+
+    public static final int MAGIC = 0x5452504C;
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES;
+
+    // GLFW uses 0 for release, 1 for press and 2 for repeat, so 3 is free to mark the end of the game
+    public static final int END_OF_GAME = 3;
+    public static final int ACTION_BITS = 2;
+    public static final int ACTION_MASK = (1 << ACTION_BITS) - 1;
+
+    // The longest possible varint is 10 bytes
+    public static final int MAX_RECORD_SIZE = 20;
+
+    private ReplayFormat() {
+    }
+
+    public static void putVarLong(ByteBuffer buffer, long value) {
+        while((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    public static int zigZagEncode(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int zigZagDecode(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,201 @@
+package replay;
+
+import logic.World;
+import logic.WorldSnapshot;
+import simulation.HeadlessGame;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+// Re-simulates a recorded game as fast as possible without rendering or the engine's tick pacing
+// Keyframe snapshots are stored while playing forward, so seeking backwards only replays from the closest keyframe
+public class ReplayPlayer {
+
+    private final ByteBuffer data;
+    private final long seed;
+    private final World world;
+    private final int keyframeInterval;
+    private final ArrayList<Keyframe> keyframes;
+
+    // The next event that hasn't been applied yet
+    private int eventTick;
+    private int eventAction;
+    private int eventKey;
+    private int recordedScore;
+
+    /**
+     * @param file A file written by ReplayRecorder
+     * @param keyframeInterval How many ticks there are between two keyframes
+     */
+    public ReplayPlayer(Path file, int keyframeInterval) throws IOException {
+
+        data = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        if(data.remaining() < ReplayFormat.HEADER_SIZE || data.getInt() != ReplayFormat.MAGIC)
+            throw new IOException("Not a replay file: " + file);
+        byte version = data.get();
+        if(version != ReplayFormat.VERSION)
+            throw new IOException("Unsupported replay version " + version + " in " + file);
+        seed = data.getLong();
+
+        this.keyframeInterval = keyframeInterval;
+        keyframes = new ArrayList<Keyframe>();
+        world = new World(new HeadlessGame());
+        world.reset(seed);
+
+        readEvent();
+        keyframes.add(new Keyframe());
+    }
+
+    /**
+     * Move the world to the given tick. Stops early if the recording ends before it
+     */
+    public void seek(int tick) {
+
+        // Continue from the closest keyframe if the tick is behind or the keyframe is ahead of the world
+        Keyframe keyframe = null;
+        for(Keyframe k : keyframes) {
+            if(k.snapshot.getTickCount() <= tick)
+                keyframe = k;
+        }
+        if(keyframe != null && (tick < world.getTickCount() || keyframe.snapshot.getTickCount() > world.getTickCount()))
+            keyframe.restore();
+
+        while(world.getTickCount() < tick && !isAtEnd()) {
+            // Apply the events that arrived before this tick
+            while(eventTick == world.getTickCount() && eventAction != ReplayFormat.END_OF_GAME) {
+                world.getTetrisPlayer().onKeyPressed(eventKey, eventAction);
+                readEvent();
+            }
+            world.tick();
+
+            if(world.getTickCount() % keyframeInterval == 0 &&
+                    keyframes.get(keyframes.size() - 1).snapshot.getTickCount() < world.getTickCount())
+                keyframes.add(new Keyframe());
+        }
+    }
+
+    /**
+     * Play the recording to the end
+     */
+    public void playToEnd() {
+        seek(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return true if the world has reached the end of the recording
+     */
+    public boolean isAtEnd() {
+        return eventAction == ReplayFormat.END_OF_GAME && world.getTickCount() >= eventTick;
+    }
+
+    /**
+     * Play to the end and compare the result to the score stored in the recording
+     * @return true if the re-simulated game ends with the recorded score
+     */
+    public boolean verify() {
+        playToEnd();
+        return isAtEnd() && world.getScore() == recordedScore;
+    }
+
+    /**
+     * @return Return the world at the current tick. It can be drawn like a live world
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return Return the last tick of the recording, or -1 if it hasn't been read yet
+     */
+    public int getEndTick() {
+        return eventAction == ReplayFormat.END_OF_GAME ? eventTick : -1;
+    }
+
+    public int getRecordedScore() {
+        return recordedScore;
+    }
+
+    // Decode the next event
+    private void readEvent() {
+
+        long header;
+        int value;
+        try {
+            header = ReplayFormat.getVarLong(data);
+            value = (int) ReplayFormat.getVarLong(data);
+        } catch(BufferUnderflowException e) {
+            // The recording was cut off, possibly in the middle of an event. End it at the last whole event
+            eventAction = ReplayFormat.END_OF_GAME;
+            recordedScore = -1;
+            return;
+        }
+
+        eventTick += (int) (header >>> ReplayFormat.ACTION_BITS);
+        eventAction = (int) (header & ReplayFormat.ACTION_MASK);
+
+        if(eventAction == ReplayFormat.END_OF_GAME)
+            recordedScore = value;
+        else
+            eventKey = ReplayFormat.zigZagDecode(value);
+    }
+
+    // A snapshot of the world together with the position of the next event
+    private class Keyframe {
+
+        private final WorldSnapshot snapshot;
+        private final int position;
+        private final int tick;
+        private final int action;
+        private final int key;
+
+        private Keyframe() {
+            snapshot = world.createSnapshot();
+            position = data.position();
+            tick = eventTick;
+            action = eventAction;
+            key = eventKey;
+        }
+
+        private void restore() {
+            world.restoreSnapshot(snapshot);
+            data.position(position);
+            eventTick = tick;
+            eventAction = action;
+            eventKey = key;
+        }
+    }
+
+    /**
+     * Usage: ReplayPlayer [replay file] [keyframe interval]
+     * Re-simulates the game and checks that it ends with the recorded score
+     */
+    public static void main(String[] args) throws IOException {
+
+        if(args.length < 1) {
+            System.out.println("Usage: ReplayPlayer [replay file] [keyframe interval]");
+            return;
+        }
+        int keyframeInterval = args.length > 1 ? Integer.parseInt(args[1]) : 60 * 60;
+
+        long start = System.nanoTime();
+        ReplayPlayer player = new ReplayPlayer(Paths.get(args[0]), keyframeInterval);
+        boolean valid = player.verify();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Seed: " + player.getSeed());
+        System.out.println("Ticks: " + player.getWorld().getTickCount() + " / " + player.getEndTick());
+        System.out.println("Score: " + player.getWorld().getScore() + " / " + player.getRecordedScore());
+        System.out.println(valid ? "Replay is valid" : "Replay does NOT match the recorded score");
+        System.out.println("Simulated in " + String.format("%.3f", elapsed / 1000000d) + " ms");
+    }
+}
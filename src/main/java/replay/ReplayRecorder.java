@@ -0,0 +1,113 @@
+package replay;
+
+import logic.World;
+import userInput.KeyListenerInterface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Records the key events of a game into a compact binary file. See ReplayFormat for the layout
+// Events are encoded into a preallocated buffer that is only written to the file when it fills up
+// Recording can be stopped from another thread than the one that records the input, e.g. when the window is closed
+public class ReplayRecorder implements KeyListenerInterface {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer buffer;
+    private FileChannel channel;
+    private World world;
+    private int lastTick;
+
+    public ReplayRecorder() {
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Start recording a game. The world has to be reset with the seed it is going to use before this is called
+     * @param file The file is created or replaced
+     */
+    public synchronized void start(Path file, World world) {
+
+        stop();
+
+        try {
+            if(file.getParent() != null)
+                Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        this.world = world;
+        lastTick = world.getTickCount();
+
+        buffer.clear();
+        buffer.putInt(ReplayFormat.MAGIC);
+        buffer.put(ReplayFormat.VERSION);
+        buffer.putLong(world.getSeed());
+    }
+
+    /**
+     * Stop recording and close the file. Does nothing if nothing is being recorded
+     */
+    public synchronized void stop() {
+
+        if(channel == null)
+            return;
+
+        // Mark the end of the game with the final tick and score
+        putRecord(world.getTickCount(), ReplayFormat.END_OF_GAME, world.getScore());
+
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        world = null;
+    }
+
+    public synchronized boolean isRecording() {
+        return channel != null;
+    }
+
+    @Override
+    public synchronized void onKeyPressed(int key, int action) {
+
+        if(channel == null)
+            return;
+
+        putRecord(world.getTickCount(), action, ReplayFormat.zigZagEncode(key));
+    }
+
+    private void putRecord(int tick, int action, int value) {
+
+        if(buffer.remaining() < ReplayFormat.MAX_RECORD_SIZE)
+            flush();
+
+        ReplayFormat.putVarLong(buffer, ((long) (tick - lastTick) << ReplayFormat.ACTION_BITS) | (action & ReplayFormat.ACTION_MASK));
+        ReplayFormat.putVarLong(buffer, value & 0xFFFFFFFFL);
+        lastTick = tick;
+    }
+
+    // Write the buffered bytes to the file
+    private void flush() {
+
+        buffer.flip();
+        try {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        buffer.clear();
+    }
+}
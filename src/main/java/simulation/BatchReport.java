@@ -0,0 +1,79 @@
+package simulation;
+
+// Aggregated results of a batch of simulated games
+public class BatchReport {
+
+    private int games;
+    private long linesCleared;
+    private int maxLinesCleared;
+    private long piecesPlaced;
+    private long ticks;
+    private int maxTicks;
+    private long elapsedNanos;
+
+    protected void addGame(int lines, int pieces, int gameTicks) {
+        games++;
+        linesCleared += lines;
+        maxLinesCleared = Math.max(maxLinesCleared, lines);
+        piecesPlaced += pieces;
+        ticks += gameTicks;
+        maxTicks = Math.max(maxTicks, gameTicks);
+    }
+
+    protected void merge(BatchReport other) {
+        games += other.games;
+        linesCleared += other.linesCleared;
+        maxLinesCleared = Math.max(maxLinesCleared, other.maxLinesCleared);
+        piecesPlaced += other.piecesPlaced;
+        ticks += other.ticks;
+        maxTicks = Math.max(maxTicks, other.maxTicks);
+    }
+
+    protected void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public long getLinesCleared() {
+        return linesCleared;
+    }
+
+    public int getMaxLinesCleared() {
+        return maxLinesCleared;
+    }
+
+    public long getPiecesPlaced() {
+        return piecesPlaced;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return Average survival time in seconds of game time
+     */
+    public double getAverageSurvivalTime() {
+        return games == 0 ? 0 : (double) ticks / games / BatchRunner.TICKS_PER_SECOND;
+    }
+
+    /**
+     * @return Simulated ticks per second of wall clock time over the whole batch
+     */
+    public double getTicksPerSecond() {
+        return elapsedNanos == 0 ? 0 : ticks / (elapsedNanos / 1000000000d);
+    }
+
+    @Override
+    public String toString() {
+        return "Games: " + games + "\n" +
+                "Lines cleared: " + linesCleared + " (avg " + String.format("%.2f", games == 0 ? 0 : (double) linesCleared / games) + ", max " + maxLinesCleared + ")\n" +
+                "Pieces placed: " + piecesPlaced + " (avg " + String.format("%.2f", games == 0 ? 0 : (double) piecesPlaced / games) + ")\n" +
+                "Survival time: avg " + String.format("%.1f", getAverageSurvivalTime()) + " s, max " + String.format("%.1f", (double) maxTicks / BatchRunner.TICKS_PER_SECOND) + " s\n" +
+                "Elapsed time: " + String.format("%.3f", elapsedNanos / 1000000000d) + " s\n" +
+                "Ticks per second: " + String.format("%.0f", getTicksPerSecond());
+    }
+}
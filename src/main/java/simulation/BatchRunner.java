@@ -0,0 +1,117 @@
+package simulation;
+
+import bot.BotPlayer;
+import logic.World;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+// Plays many independent headless games in parallel and aggregates their results
+// Games are ticked as fast as possible without a wall clock
+public class BatchRunner {
+
+    // Game time that one tick represents
+    public static final int TICKS_PER_SECOND = 60;
+    // How many games one task plays before splitting is no longer worth it
+    private static final int GAMES_PER_TASK = 8;
+
+    private final Supplier<Policy> policyFactory;
+    private final int maxTicks;
+
+    /**
+     * @param policyFactory Creates a new policy for every game
+     * @param maxTicks Games that last longer than this are stopped
+     */
+    public BatchRunner(Supplier<Policy> policyFactory, int maxTicks) {
+        this.policyFactory = policyFactory;
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * Play a game for every seed from firstSeed to firstSeed + games - 1
+     * @param parallelism How many threads are used
+     * @return Return the aggregated results
+     */
+    public BatchReport run(long firstSeed, int games, int parallelism) {
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+        try {
+            BatchReport report = pool.invoke(new GameTask(firstSeed, games));
+            report.setElapsedNanos(System.nanoTime() - start);
+            return report;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Play one game until it ends or reaches the tick limit
+     */
+    private void playGame(long seed, BatchReport report) {
+
+        World world = new World(new HeadlessGame());
+        world.reset(seed);
+        Policy policy = policyFactory.get();
+
+        int ticks = 0;
+        while(!world.hasGameEnded() && ticks < maxTicks) {
+            policy.act(world, world.getTetrisPlayer());
+            world.tick();
+            ticks++;
+        }
+
+        report.addGame(world.getScore(), world.getPiecesPlaced(), ticks);
+    }
+
+    private class GameTask extends RecursiveTask<BatchReport> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long firstSeed;
+        private final int games;
+
+        private GameTask(long firstSeed, int games) {
+            this.firstSeed = firstSeed;
+            this.games = games;
+        }
+
+        @Override
+        protected BatchReport compute() {
+
+            if(games <= GAMES_PER_TASK) {
+                BatchReport report = new BatchReport();
+                for(int i = 0; i < games; i++) {
+                    playGame(firstSeed + i, report);
+                }
+                return report;
+            }
+
+            // Split the seed range in two
+            int half = games / 2;
+            GameTask left = new GameTask(firstSeed, half);
+            GameTask right = new GameTask(firstSeed + half, games - half);
+            left.fork();
+            BatchReport report = right.compute();
+            report.merge(left.join());
+            return report;
+        }
+    }
+
+    /**
+     * Usage: BatchRunner [games] [first seed] [threads] [max ticks] [bot|harddrop]
+     */
+    public static void main(String[] args) {
+
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long firstSeed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int maxTicks = args.length > 3 ? Integer.parseInt(args[3]) : 60 * 60 * TICKS_PER_SECOND;
+
+        boolean useBot = args.length <= 4 || args[4].equals("bot");
+
+        BatchRunner runner = new BatchRunner(useBot ? BotPlayer::new : HardDropPolicy::new, maxTicks);
+        System.out.println(runner.run(firstSeed, games, threads));
+    }
+}
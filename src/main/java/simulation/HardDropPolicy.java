@@ -0,0 +1,14 @@
+package simulation;
+
+import logic.TetrisPlayer;
+import logic.World;
+
+// A baseline policy that drops every piece straight down from where it spawns
+public class HardDropPolicy implements Policy {
+
+    @Override
+    public void act(World world, TetrisPlayer player) {
+        if(world.getCurrentPiece() != null)
+            player.hardDrop();
+    }
+}
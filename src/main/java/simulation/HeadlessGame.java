@@ -0,0 +1,11 @@
+package simulation;
+
+import logic.WorldToGameInterface;
+
+// Ignores the end of the game. Used when a world is simulated without audio or a display
+public class HeadlessGame implements WorldToGameInterface {
+
+    @Override
+    public void gameEnded() {
+    }
+}
@@ -0,0 +1,9 @@
+package simulation;
+
+import logic.TetrisPlayer;
+import logic.World;
+
+// Decides what a simulated player does. Called once before every tick
+public interface Policy {
+    public void act(World world, TetrisPlayer player);
+}
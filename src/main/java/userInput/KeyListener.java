@@ -4,12 +4,31 @@ import org.lwjgl.glfw.GLFWKeyCallback;
 
 import java.util.ArrayList;
 
+// Receives the key events of the window and passes them to the listeners
+// Events are queued when the window gets them and dispatched on the tick thread, so the listeners can change the game
+// without locking even when the game is rendered on another thread
 public class KeyListener extends GLFWKeyCallback {
 
+    // Key events that can wait for dispatching at the same time. Has to be a power of two
+    private static final int QUEUE_CAPACITY = 256;
+
     ArrayList<KeyListenerInterface> keyListenerInterfaces;
 
+    // Queued events. Written by the window thread, read by the tick thread
+    private final int[] queuedKeys;
+    private final int[] queuedActions;
+    // System.nanoTime() of when each event was received
+    private final long[] queuedTimes;
+    private long firstDispatchedTime;
+    // Next event to dispatch and next free slot. Each is written by one thread only
+    private volatile int queueHead;
+    private volatile int queueTail;
+
     public KeyListener() {
         keyListenerInterfaces = new ArrayList<KeyListenerInterface>();
+        queuedKeys = new int[QUEUE_CAPACITY];
+        queuedActions = new int[QUEUE_CAPACITY];
+        queuedTimes = new long[QUEUE_CAPACITY];
     }
 
     public void addKeyListener(KeyListenerInterface keyListenerInterface) {
@@ -18,8 +37,44 @@ public class KeyListener extends GLFWKeyCallback {
 
     @Override
     public void invoke(long window, int key, int scancode, int action, int mods) {
-        for(KeyListenerInterface keyListenerInterface : keyListenerInterfaces) {
-            keyListenerInterface.onKeyPressed(key, action);
+
+        int tail = queueTail;
+        if(tail - queueHead == QUEUE_CAPACITY) {
+            System.err.println("Key event queue is full. Key event dropped: "+key);
+            return;
         }
+        queuedKeys[tail & (QUEUE_CAPACITY - 1)] = key;
+        queuedActions[tail & (QUEUE_CAPACITY - 1)] = action;
+        queuedTimes[tail & (QUEUE_CAPACITY - 1)] = System.nanoTime();
+        queueTail = tail + 1;
+    }
+
+    /**
+     * Pass the queued key events to the listeners in the order they happened
+     * Called on the thread that updates the game
+     * @return Return how many events were dispatched
+     */
+    public int dispatchEvents() {
+
+        int head = queueHead;
+        int dispatched = 0;
+        while(head != queueTail) {
+            if(dispatched++ == 0)
+                firstDispatchedTime = queuedTimes[head & (QUEUE_CAPACITY - 1)];
+            int key = queuedKeys[head & (QUEUE_CAPACITY - 1)];
+            int action = queuedActions[head & (QUEUE_CAPACITY - 1)];
+            queueHead = ++head;
+            for(KeyListenerInterface keyListenerInterface : keyListenerInterfaces) {
+                keyListenerInterface.onKeyPressed(key, action);
+            }
+        }
+        return dispatched;
+    }
+
+    /**
+     * @return Return the System.nanoTime() of when the first event of the last dispatch was received
+     */
+    public long getFirstDispatchedTime() {
+        return firstDispatchedTime;
     }
 }
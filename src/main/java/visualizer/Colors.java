@@ -2,6 +2,13 @@ package visualizer;
 
 public class Colors {
 
+    // The palette of the tetris pieces. Each row has the five piece colors from light to dark and the outline color.
+    // The first rows are the pieces and the rows after them are the same pieces as ghost blocks.
+    // The renderer keeps the palette in a texture, so a theme is just a different palette
+    public static final int PALETTE_COLORS_PER_ROW = 6;
+    public static final int GHOST_PALETTE_ROW_OFFSET = 7;
+    public static final int PALETTE_ROW_COUNT = 14;
+
     public static final float[][] pieceColors = new float[][]{
             {0f, 1f, 1f, 1f},
             {1f, 1f, 0f, 1f},
@@ -71,4 +78,26 @@ public class Colors {
             {0.2f, 0.2f, 1f, 1f},
             {1f, 0.6f, 0.2f, 1f}
     };
+
+    /**
+     * @return Return the palette as vec4s, row by row
+     */
+    public static float[] createPalette() {
+
+        float[] palette = new float[PALETTE_ROW_COUNT * PALETTE_COLORS_PER_ROW * 4];
+        float[] black = new float[]{0f, 0f, 0f, 1f};
+        for(int i = 0; i < GHOST_PALETTE_ROW_OFFSET; i++) {
+            float[][] row = new float[][]{
+                    pieceColors[i], pieceColors2[i], pieceColors3[i], pieceColors4[i], pieceColors5[i], brightenedPieceColors[i]
+            };
+            float[][] ghostRow = new float[][]{
+                    black, black, black, black, black, brightenedPieceColors[i]
+            };
+            for(int j = 0; j < PALETTE_COLORS_PER_ROW; j++) {
+                System.arraycopy(row[j], 0, palette, (i * PALETTE_COLORS_PER_ROW + j) * 4, 4);
+                System.arraycopy(ghostRow[j], 0, palette, ((i + GHOST_PALETTE_ROW_OFFSET) * PALETTE_COLORS_PER_ROW + j) * 4, 4);
+            }
+        }
+        return palette;
+    }
 }
@@ -4,12 +4,13 @@ import static org.lwjgl.glfw.GLFW.glfwPollEvents;
 import static org.lwjgl.opengles.GLES32.*;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
+import engine.LatencyHistogram;
 import org.lwjgl.opengles.GLES;
 import org.lwjgl.system.MemoryUtil;
 import visualizer.textures.Texture;
+import visualizer.textures.TextureAtlas;
 import visualizer.textures.TextureHelper;
 
 // This class is responsible for rendering stuff on the screen
@@ -20,27 +21,53 @@ public class Renderer {
 	private final int COORDS_PER_VERTEX = 3;
 	// 4 bytes per vertex
 	private final int VERTEX_STRIDE = COORDS_PER_VERTEX * 4;
+	// How many squares of tetris pieces can be queued before they have to be drawn
+	private static final int SQUARE_BATCH_CAPACITY = 512;
+	// Center x, center y, palette row and opacity
+	private static final int FLOATS_PER_SQUARE = 4;
+	// Texture unit of the palette. Nothing else uses it, so the palette stays bound there
+	private static final int PALETTE_TEXTURE_UNIT = 1;
 
 	private final Window window;
-	private ShaderProgram triangleShaderProgram;
-	private ShaderProgram spriteShaderProgram;
-	private ShaderProgram tetrisPieceShaderProgram;
-	private int triangleVaoID;
-	private int triangleVboID;
-	private int spriteVaoID;
+	// Records how long swapping the color buffers takes, or null
+	private LatencyHistogram swapTimes;
+	private ShaderProgram squareBatchShaderProgram;
+	// Triangles, rectangles and images
+	private SpriteBatch spriteBatch;
 	private int spriteVboID;
-
+	private int spriteTextureCoordinateVboID;
+	private int squareBatchVaoID;
+	private int squareBatchVboID;
+	private int paletteTextureHandle;
+
+	// The viewport is a square in the middle of the window
+	private int viewportX;
+	private int viewportY;
+	private int viewportSize;
+
+	// Offscreen layer of the placed squares. It has the size of the viewport and is created again when the viewport changes
+	private int boardLayerFramebufferID;
+	private int boardLayerTextureHandle;
+	private int boardLayerSize;
+	private boolean boardLayerValid = false;
+
+	// Queued squares of tetris pieces. They all have the same size
+	private FloatBuffer squareBatch;
+	private int squareBatchCount;
+	private float squareBatchWidth;
+	private float squareBatchHeight;
+
+	// Uniform locations, looked up once after the program is linked
+	private int squareBatchScaleXLocation;
+	private int squareBatchScaleYLocation;
+
+	// Every image is in the same atlas
+	private final TextureAtlas textureAtlas;
 	protected final Texture tetrisPieceTexture;
 	protected final Texture gameOverTexture;
 	protected final Texture pressContinueTexture;
 	protected final Texture pressStartTexture;
 
-	private final float[] triangleVertices = new float[] {
-			-0.5f, -0.5f, 0f,
-			0f, 0.5f, 0f,
-			0.5f, -0.5f, 0f
-	};
-
 	private final float[] spriteVertices = new float[] {
 			-1f, -1f, 0f,
 			-1f, 1f, 0f,
@@ -50,8 +77,6 @@ public class Renderer {
 			1f, 1f, 0f
 	};
 
-	private FloatBuffer spriteTextureCoordinates;
-
 	private final float[] spriteTextureCoordinateData = new float[] {
 			// First triangle
 			0.0f, 1.0f,
@@ -70,10 +95,22 @@ public class Renderer {
 		init();
 
 		// Load textures
-		tetrisPieceTexture = TextureHelper.loadTexture("/textures/tetrispiece.png");
-		gameOverTexture = TextureHelper.loadTexture("/textures/gameover.png");
-		pressContinueTexture = TextureHelper.loadTexture("/textures/pressspacetocontinue.png");
-		pressStartTexture = TextureHelper.loadTexture("/textures/pressspacetostart.png");
+		textureAtlas = TextureHelper.loadAtlas(
+				"/textures/tetrispiece.png",
+				"/textures/gameover.png",
+				"/textures/pressspacetocontinue.png",
+				"/textures/pressspacetostart.png"
+		);
+		tetrisPieceTexture = textureAtlas.getTexture("/textures/tetrispiece.png");
+		gameOverTexture = textureAtlas.getTexture("/textures/gameover.png");
+		pressContinueTexture = textureAtlas.getTexture("/textures/pressspacetocontinue.png");
+		pressStartTexture = textureAtlas.getTexture("/textures/pressspacetostart.png");
+
+		// Shapes are drawn with the white texel, so they can be batched together with the images
+		spriteBatch.setWhiteTexel(textureAtlas.getWhiteTexel());
+
+		// The tetris piece is a region of the atlas
+		setTextureRegion(squareBatchShaderProgram, tetrisPieceTexture);
 
 	}
 
@@ -93,67 +130,80 @@ public class Renderer {
 		// Set the clear color
 		glClearColor(0.0f, 0.0f, 0.5f, 0.0f);
 
-		// Create triangle shader programs
-		triangleShaderProgram = new ShaderProgram();
-		triangleShaderProgram.createVertexShader("src/main/glsl/triangle_vertex.glsl");
-		triangleShaderProgram.createFragmentShader("src/main/glsl/triangle_fragment.glsl");
-		triangleShaderProgram.link();
-
-		// Create sprite shader programs
-		spriteShaderProgram = new ShaderProgram();
-		spriteShaderProgram.createVertexShader("src/main/glsl/sprite_vertex.glsl");
-		spriteShaderProgram.createFragmentShader("src/main/glsl/sprite_fragment.glsl");
-		spriteShaderProgram.link();
+		// Create the batch of triangles, rectangles and images
+		spriteBatch = new SpriteBatch();
+
+		// Create shader program for drawing many squares of tetris pieces at once
+		squareBatchShaderProgram = new ShaderProgram();
+		squareBatchShaderProgram.createVertexShader("src/main/glsl/tetrisPieceInstanced_vertex.glsl");
+		squareBatchShaderProgram.createFragmentShader("src/main/glsl/tetrisPieceInstanced_fragment.glsl");
+		squareBatchShaderProgram.link();
+
+		// Look up the locations
+		squareBatchScaleXLocation = squareBatchShaderProgram.getUniformLocation("scaleX");
+		squareBatchScaleYLocation = squareBatchShaderProgram.getUniformLocation("scaleY");
+
+		// The texture units never change, so they are set only once
+		squareBatchShaderProgram.bind();
+		squareBatchShaderProgram.setUniform(squareBatchShaderProgram.getUniformLocation("palette"), PALETTE_TEXTURE_UNIT);
+		squareBatchShaderProgram.setUniform(squareBatchShaderProgram.getUniformLocation("pieceTexture"), 0);
+		squareBatchShaderProgram.unbind();
+
+		// Palette texture
+		paletteTextureHandle = glGenTextures();
+		glActiveTexture(GL_TEXTURE0 + PALETTE_TEXTURE_UNIT);
+		glBindTexture(GL_TEXTURE_2D, paletteTextureHandle);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+		glActiveTexture(GL_TEXTURE0);
+		setPalette(Colors.createPalette());
 
-		// Create separate shader program for the tetris pieces
-		tetrisPieceShaderProgram = new ShaderProgram();
-		tetrisPieceShaderProgram.createVertexShader("src/main/glsl/sprite_vertex.glsl");
-		tetrisPieceShaderProgram.createFragmentShader("src/main/glsl/tetrisPiece_fragment.glsl");
-		tetrisPieceShaderProgram.link();
-
-		// Triangle VBO
-
-		// Create float buffer
-		FloatBuffer triangleVerticesBuffer = MemoryUtil.memAllocFloat(triangleVertices.length);
-		triangleVerticesBuffer.put(triangleVertices).flip();
-
-		// Create VAO
-		triangleVaoID = glGenVertexArrays();
-		glBindVertexArray(triangleVaoID);
-
-		// Create VBO
-		triangleVboID = glGenBuffers();
-		glBindBuffer(GL_ARRAY_BUFFER, triangleVboID);
-		glBufferData(GL_ARRAY_BUFFER, triangleVerticesBuffer, GL_STATIC_DRAW);
-		MemoryUtil.memFree(triangleVerticesBuffer);
-
-		// Define the structure of the data and store it in one of the attribute lists of the VAO
-		glVertexAttribPointer(0, COORDS_PER_VERTEX, GL_FLOAT, false, VERTEX_STRIDE, 0);
-
-		// Unbind the VBO
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
-
-		// Unbind the VAO
-		glBindVertexArray(0);
-		
 		// Sprite VBO
 
 		// Create float buffer
 		FloatBuffer spriteVerticesBuffer = MemoryUtil.memAllocFloat(spriteVertices.length);
 		spriteVerticesBuffer.put(spriteVertices).flip();
 
-		// Create VAO
-		spriteVaoID = glGenVertexArrays();
-		glBindVertexArray(spriteVaoID);
-
 		// Create VBO
 		spriteVboID = glGenBuffers();
 		glBindBuffer(GL_ARRAY_BUFFER, spriteVboID);
 		glBufferData(GL_ARRAY_BUFFER, spriteVerticesBuffer, GL_STATIC_DRAW);
 		MemoryUtil.memFree(spriteVerticesBuffer);
 
-		// Define the structure of the data and store it in one of the attribute lists of the VAO
+		// Texture coordinates are in a VBO of their own
+		FloatBuffer spriteTextureCoordinates = MemoryUtil.memAllocFloat(spriteTextureCoordinateData.length);
+		spriteTextureCoordinates.put(spriteTextureCoordinateData).flip();
+		spriteTextureCoordinateVboID = glGenBuffers();
+		glBindBuffer(GL_ARRAY_BUFFER, spriteTextureCoordinateVboID);
+		glBufferData(GL_ARRAY_BUFFER, spriteTextureCoordinates, GL_STATIC_DRAW);
+		MemoryUtil.memFree(spriteTextureCoordinates);
+
+		// Unbind the VBO
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		// Square batch VAO
+
+		squareBatchVaoID = glGenVertexArrays();
+		glBindVertexArray(squareBatchVaoID);
+
+		// The squares share the vertices of the sprites
+		glBindBuffer(GL_ARRAY_BUFFER, spriteVboID);
 		glVertexAttribPointer(0, COORDS_PER_VERTEX, GL_FLOAT, false, VERTEX_STRIDE, 0);
+		glEnableVertexAttribArray(0);
+
+		glBindBuffer(GL_ARRAY_BUFFER, spriteTextureCoordinateVboID);
+		glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
+		glEnableVertexAttribArray(1);
+
+		// One set of square data per instance
+		squareBatchVboID = glGenBuffers();
+		glBindBuffer(GL_ARRAY_BUFFER, squareBatchVboID);
+		glBufferData(GL_ARRAY_BUFFER, (long) SQUARE_BATCH_CAPACITY * FLOATS_PER_SQUARE * Float.BYTES, GL_STREAM_DRAW);
+		glVertexAttribPointer(2, FLOATS_PER_SQUARE, GL_FLOAT, false, 0, 0);
+		glVertexAttribDivisor(2, 1);
+		glEnableVertexAttribArray(2);
 
 		// Unbind the VBO
 		glBindBuffer(GL_ARRAY_BUFFER, 0);
@@ -161,10 +211,14 @@ public class Renderer {
 		// Unbind the VAO
 		glBindVertexArray(0);
 
-		// Create sprite texture coordinates
-		spriteTextureCoordinates = ByteBuffer.allocateDirect(spriteTextureCoordinateData.length * Float.BYTES)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		spriteTextureCoordinates.put(spriteTextureCoordinateData).position(0);
+		squareBatch = MemoryUtil.memAllocFloat(SQUARE_BATCH_CAPACITY * FLOATS_PER_SQUARE);
+	}
+
+	private static void setTextureRegion(ShaderProgram shaderProgram, Texture texture) {
+
+		shaderProgram.bind();
+		shaderProgram.setUniform(shaderProgram.getUniformLocation("textureRegion"), texture.u0, texture.v0, texture.u1, texture.v1);
+		shaderProgram.unbind();
 	}
 
 	/**
@@ -177,21 +231,123 @@ public class Renderer {
 		// Resize the viewport if necessary
 		if(window.isResized()) {
 			if(window.getWidth() > window.getHeight()) {
-				glViewport((window.getWidth()-window.getHeight())/2, 0, window.getHeight(), window.getHeight());
+				viewportX = (window.getWidth()-window.getHeight())/2;
+				viewportY = 0;
+				viewportSize = window.getHeight();
 			}
 			else {
-				glViewport(0, (window.getHeight()-window.getWidth())/2, window.getWidth(), window.getWidth());
+				viewportX = 0;
+				viewportY = (window.getHeight()-window.getWidth())/2;
+				viewportSize = window.getWidth();
 			}
+			glViewport(viewportX, viewportY, viewportSize, viewportSize);
 			window.setResized(false);
+			// The layer doesn't match the new resolution
+			boardLayerValid = false;
 		}
 	}
 
+	/**
+	 * @return Return whether the board layer still has what was last drawn on it
+	 */
+	public boolean isBoardLayerValid() {
+		return boardLayerValid;
+	}
+
+	/**
+	 * Start drawing on the board layer instead of the screen. The layer is cleared to transparent
+	 */
+	public void beginBoardLayer() {
+
+		// Draw everything that was meant for the screen first
+		spriteBatch.flush();
+		flushTetrisPieces();
+
+		// Create the layer again if the viewport has changed size. A minimized window has a viewport of size 0
+		int size = Math.max(1, viewportSize);
+		if(boardLayerFramebufferID == 0 || boardLayerSize != size) {
+			deleteBoardLayer();
+			boardLayerSize = size;
+
+			boardLayerTextureHandle = glGenTextures();
+			glBindTexture(GL_TEXTURE_2D, boardLayerTextureHandle);
+			glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, size, size, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+			glBindTexture(GL_TEXTURE_2D, 0);
+
+			boardLayerFramebufferID = glGenFramebuffers();
+			glBindFramebuffer(GL_FRAMEBUFFER, boardLayerFramebufferID);
+			glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, boardLayerTextureHandle, 0);
+			if(glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE)
+				System.err.println("Board layer framebuffer is incomplete. Size: "+size);
+		}
+
+		glBindFramebuffer(GL_FRAMEBUFFER, boardLayerFramebufferID);
+		glViewport(0, 0, boardLayerSize, boardLayerSize);
+		glClearColor(0f, 0f, 0f, 0f);
+		glClear(GL_COLOR_BUFFER_BIT);
+		glClearColor(0.0f, 0.0f, 0.5f, 0.0f);
+	}
+
+	/**
+	 * Finish drawing on the board layer and continue drawing on the screen
+	 */
+	public void endBoardLayer() {
+
+		spriteBatch.flush();
+		flushTetrisPieces();
+
+		glBindFramebuffer(GL_FRAMEBUFFER, 0);
+		glViewport(viewportX, viewportY, viewportSize, viewportSize);
+		boardLayerValid = true;
+	}
+
+	/**
+	 * Draw the board layer on the screen
+	 * @param yOffset How much the layer is moved up
+	 */
+	public void drawBoardLayer(float yOffset) {
+
+		if(boardLayerFramebufferID == 0)
+			return;
+
+		// Framebuffer textures start from the bottom row, so the image is flipped vertically with a negative height
+		drawImage(0, yOffset, 1, -1, 0, boardLayerTextureHandle);
+	}
+
+	private void deleteBoardLayer() {
+
+		if(boardLayerFramebufferID != 0) {
+			glDeleteFramebuffers(boardLayerFramebufferID);
+			glDeleteTextures(boardLayerTextureHandle);
+			boardLayerFramebufferID = 0;
+			boardLayerTextureHandle = 0;
+		}
+		boardLayerValid = false;
+	}
+
 	/**
 	 * Swap the color buffers.
 	 */
 	public void draw() {
+		// Draw what is still batched
+		spriteBatch.flush();
+
 		// Swap the color buffers
+		long start = System.nanoTime();
 		window.swapBuffers();
+		if(swapTimes != null)
+			swapTimes.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param swapTimes Histogram for the durations of the buffer swaps, or null to not record them
+	 */
+	public void setSwapTimes(LatencyHistogram swapTimes) {
+		this.swapTimes = swapTimes;
 	}
 
 	/**
@@ -205,206 +361,144 @@ public class Renderer {
 
 	/**
 	 * Draw a triangle at the given coordinates with the given color
+	 * Triangles, rectangles and images are batched and drawn in order when the texture changes,
+	 * before tetris pieces are drawn or when the color buffers are swapped
 	 */
 	public void drawTriangle(float[] coords, float rotationAngle, float[] color) {
-
-		// Bind to a shader program
-		triangleShaderProgram.bind();
-
-		// Bind to the VBO to change VBO data
-		glBindBuffer(GL_ARRAY_BUFFER, triangleVboID);
-
-		// Change VBO data to given coordinates
-		glBufferSubData(GL_ARRAY_BUFFER, 0, coords);
-
-		// Unbind VBO
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
-
-		// Bind to the VAO
-		glBindVertexArray(triangleVaoID);
-		glEnableVertexAttribArray(0);
-
-		// Set rotation uniform
-		int rotationUniformLocation = glGetUniformLocation(triangleShaderProgram.getProgramId(), "angle");
-		glUniform1f(rotationUniformLocation, rotationAngle);
-
-		// Set color uniform
-		int colorUniformLocation = glGetUniformLocation(triangleShaderProgram.getProgramId(), "color");
-		glUniform4fv(colorUniformLocation, color);
-
-		// Draw the vertices
-		glDrawArrays(GL_TRIANGLES, 0, 3);
-
-		// Restore state
-		glDisableVertexAttribArray(0);
-		glBindVertexArray(0);
-
-		// Unbind from the shader program
-		triangleShaderProgram.unbind();
+		spriteBatch.addTriangle(coords, rotationAngle, color);
 	}
 
 	/**
 	 * Draw rectangle at given position
 	 */
 	public void drawRectangle(float xPos, float yPos, float width, float height, float[] color) {
-		drawTriangle(
-				new float[]{
-						xPos, yPos, 0f,
-						xPos, yPos-height, 0f,
-						xPos+width, yPos-height, 0f
-				},
-				0,
-				color
-		);
-		drawTriangle(
-				new float[] {
-						xPos, yPos, 0f,
-						xPos+width, yPos, 0f,
-						xPos+width, yPos-height, 0f
-				},
-				0,
-				color
-		);
+		spriteBatch.addRectangle(xPos, yPos, width, height, color);
 	}
 
 	/**
 	 * Draw an image at the given coordinates.
 	 */
 	public void drawImage(float xPos, float yPos, float width, float height, float rotationAngle, int textureHandle) {
+		spriteBatch.addImage(xPos, yPos, width, height, rotationAngle, textureHandle, 0f, 0f, 1f, 1f);
+	}
 
-		// Bind to a shader program
-		spriteShaderProgram.bind();
-
-		// Bind to the VAO
-		glBindVertexArray(spriteVaoID);
-		glEnableVertexAttribArray(0);
-
-		// Set rotation uniform
-		int rotationUniformLocation = glGetUniformLocation(spriteShaderProgram.getProgramId(), "angle");
-		glUniform1f(rotationUniformLocation, rotationAngle);
-
-		// Set scale uniforms
-		int scaleXUniformLocation = glGetUniformLocation(spriteShaderProgram.getProgramId(), "scaleX");
-		glUniform1f(scaleXUniformLocation, width);
-		int scaleYUniformLocation = glGetUniformLocation(spriteShaderProgram.getProgramId(), "scaleY");
-		glUniform1f(scaleYUniformLocation, height);
+	/**
+	 * Draw an image at the given coordinates. The image can be a region of an atlas
+	 */
+	public void drawImage(float xPos, float yPos, float width, float height, float rotationAngle, Texture texture) {
+		spriteBatch.addImage(xPos, yPos, width, height, rotationAngle, texture.textureHandle, texture.u0, texture.v0, texture.u1, texture.v1);
+	}
 
-		// Set offset uniform
-		int offsetUniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "offset");
-		glUniform2fv(offsetUniformLocation, new float[]{xPos, yPos});
+	/**
+	 * Change the colors of the tetris pieces. Has to be called on the thread that renders
+	 * @param palette Colors in the layout of Colors.createPalette()
+	 */
+	public void setPalette(float[] palette) {
 
-		// Set texture uniform
-		int textureUniformLocation = glGetUniformLocation(spriteShaderProgram.getProgramId(), "texture");
-		// Tell the texture uniform sampler to user this texture in the shader by binding to texture unit 0
-		glUniform1i(textureUniformLocation, 0);
+		int colorCount = Colors.PALETTE_ROW_COUNT * Colors.PALETTE_COLORS_PER_ROW;
+		if(palette.length != colorCount * 4)
+			throw new IllegalArgumentException("Palette has to have "+colorCount+" colors. Palette length given: "+palette.length);
 
-		// Bind texture
-		glBindTexture(GL_TEXTURE_2D, textureHandle);
+		// Convert the colors to bytes
+		ByteBuffer paletteBuffer = MemoryUtil.memAlloc(palette.length);
+		for(float component : palette) {
+			paletteBuffer.put((byte) Math.round(Math.max(0f, Math.min(1f, component)) * 255f));
+		}
+		paletteBuffer.flip();
 
-		// Get and enable texture coordinates attribute
-		int textureCoordinateAttribLocation = glGetAttribLocation(spriteShaderProgram.getProgramId(), "textureCoordinate");
-		glEnableVertexAttribArray(textureCoordinateAttribLocation);
+		glActiveTexture(GL_TEXTURE0 + PALETTE_TEXTURE_UNIT);
+		glBindTexture(GL_TEXTURE_2D, paletteTextureHandle);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, Colors.PALETTE_COLORS_PER_ROW, Colors.PALETTE_ROW_COUNT, 0, GL_RGBA, GL_UNSIGNED_BYTE, paletteBuffer);
+		glActiveTexture(GL_TEXTURE0);
+		MemoryUtil.memFree(paletteBuffer);
+	}
 
-		// Set texture coordinates
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
-		spriteTextureCoordinates.position(0);
-		glVertexAttribPointer(textureCoordinateAttribLocation, 2, GL_FLOAT, false, 0, spriteTextureCoordinates);
+	/**
+	 * Queue a square of a tetris piece. The queued squares are drawn in order with one draw call
+	 * when flushTetrisPieces() is called, when the batch is full or when a square of a different size is queued
+	 * @param paletteRow Row of the palette that colors the square
+	 */
+	public void queueTetrisPiece(float xPos, float yPos, float width, float height, int paletteRow, float opacity) {
 
-		// Draw the vertices
-		glDrawArrays(GL_TRIANGLES, 0, 6);
+		if(paletteRow < 0 || paletteRow >= Colors.PALETTE_ROW_COUNT)
+			throw new IllegalArgumentException("Palette row has to be between 0 and "+(Colors.PALETTE_ROW_COUNT-1)+". Palette row given: "+paletteRow);
 
-		// Restore state
-		glDisableVertexAttribArray(0);
-		glBindVertexArray(0);
-		glBindTexture(GL_TEXTURE_2D, 0);
+		if(squareBatchCount > 0 && (width != squareBatchWidth || height != squareBatchHeight))
+			flushTetrisPieces();
+		if(squareBatchCount == SQUARE_BATCH_CAPACITY)
+			flushTetrisPieces();
 
-		// Unbind from the shader program
-		spriteShaderProgram.unbind();
+		squareBatchWidth = width;
+		squareBatchHeight = height;
+		squareBatch.put(xPos).put(yPos).put(paletteRow).put(opacity);
+		squareBatchCount++;
 	}
 
-	public void drawTetrisPiece(float xPos, float yPos, float width, float height, float rotationAngle, float[][] replaceColors, float opacity) {
+	/**
+	 * Draw the queued squares of tetris pieces
+	 */
+	public void flushTetrisPieces() {
 
-		// Bind to a shader program
-		tetrisPieceShaderProgram.bind();
+		if(squareBatchCount == 0)
+			return;
 
-		// Bind to the VAO
-		glBindVertexArray(spriteVaoID);
-		glEnableVertexAttribArray(0);
+		// Draw the batched shapes under the squares
+		spriteBatch.flush();
 
-		// Set rotation uniform
-		int rotationUniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "angle");
-		glUniform1f(rotationUniformLocation, rotationAngle);
+		// Bind to a shader program
+		squareBatchShaderProgram.bind();
 
 		// Set scale uniforms
-		int scaleXUniformLocation = glGetUniformLocation(spriteShaderProgram.getProgramId(), "scaleX");
-		glUniform1f(scaleXUniformLocation, width);
-		int scaleYUniformLocation = glGetUniformLocation(spriteShaderProgram.getProgramId(), "scaleY");
-		glUniform1f(scaleYUniformLocation, height);
-
-		// Set offset uniform
-		int offsetUniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "offset");
-		glUniform2fv(offsetUniformLocation, new float[]{xPos, yPos});
-
-		// Set color uniforms
-		int color1UniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "color1");
-		glUniform4fv(color1UniformLocation, replaceColors[0]);
-		int color2UniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "color2");
-		glUniform4fv(color2UniformLocation, replaceColors[1]);
-		int color3UniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "color3");
-		glUniform4fv(color3UniformLocation, replaceColors[2]);
-		int color4UniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "color4");
-		glUniform4fv(color4UniformLocation, replaceColors[3]);
-		int color5UniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "color5");
-		glUniform4fv(color5UniformLocation, replaceColors[4]);
-		int outlineColorUniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "outlineColor");
-		glUniform4fv(outlineColorUniformLocation, replaceColors[5]);
-		int opacityUniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "opacity");
-		glUniform1f(opacityUniformLocation, opacity);
-
-		// Set texture uniform
-		int textureUniformLocation = glGetUniformLocation(tetrisPieceShaderProgram.getProgramId(), "texture");
-		// Tell the texture uniform sampler to user this texture in the shader by binding to texture unit 0
-		glUniform1i(textureUniformLocation, 0);
-
-		// Bind texture
-		glBindTexture(GL_TEXTURE_2D, tetrisPieceTexture.textureHandle);
-
-		// Get and enable texture coordinates attribute
-		int textureCoordinateAttribLocation = glGetAttribLocation(tetrisPieceShaderProgram.getProgramId(), "textureCoordinate");
-		glEnableVertexAttribArray(textureCoordinateAttribLocation);
-
-		// Set texture coordinates
+		squareBatchShaderProgram.setUniform(squareBatchScaleXLocation, squareBatchWidth);
+		squareBatchShaderProgram.setUniform(squareBatchScaleYLocation, squareBatchHeight);
+
+		// Upload the squares. Orphaning the old data means the driver doesn't have to wait for the previous draw
+		squareBatch.flip();
+		glBindBuffer(GL_ARRAY_BUFFER, squareBatchVboID);
+		glBufferData(GL_ARRAY_BUFFER, (long) SQUARE_BATCH_CAPACITY * FLOATS_PER_SQUARE * Float.BYTES, GL_STREAM_DRAW);
+		glBufferSubData(GL_ARRAY_BUFFER, 0, squareBatch);
 		glBindBuffer(GL_ARRAY_BUFFER, 0);
-		spriteTextureCoordinates.position(0);
-		glVertexAttribPointer(textureCoordinateAttribLocation, 2, GL_FLOAT, false, 0, spriteTextureCoordinates);
 
-		// Draw the vertices
-		glDrawArrays(GL_TRIANGLES, 0, 6);
+		// Bind to the VAO and the texture
+		glBindVertexArray(squareBatchVaoID);
+		glBindTexture(GL_TEXTURE_2D, tetrisPieceTexture.textureHandle);
+
+		// Draw every square
+		glDrawArraysInstanced(GL_TRIANGLES, 0, 6, squareBatchCount);
 
 		// Restore state
-		glDisableVertexAttribArray(0);
 		glBindVertexArray(0);
 		glBindTexture(GL_TEXTURE_2D, 0);
+		squareBatch.clear();
+		squareBatchCount = 0;
 
 		// Unbind from the shader program
-		tetrisPieceShaderProgram.unbind();
+		squareBatchShaderProgram.unbind();
 	}
 
 	public void cleanup() {
 
 		// Clean up shader programs
-		if (triangleShaderProgram != null) {
-			triangleShaderProgram.cleanup();
+		if (spriteBatch != null) {
+			spriteBatch.cleanup();
 		}
 
-		glDisableVertexAttribArray(0);
-
 		// Delete the VBO
 		glBindBuffer(GL_ARRAY_BUFFER, 0);
-		glDeleteBuffers(triangleVboID);
+		glDeleteBuffers(spriteVboID);
 
-		// Delete the VAO
-		glBindVertexArray(0);
-		glDeleteVertexArrays(triangleVaoID);
+		// Delete the square batch
+		if (squareBatchShaderProgram != null) {
+			squareBatchShaderProgram.cleanup();
+		}
+		glDeleteBuffers(squareBatchVboID);
+		glDeleteBuffers(spriteTextureCoordinateVboID);
+		glDeleteVertexArrays(squareBatchVaoID);
+		glDeleteTextures(paletteTextureHandle);
+		deleteBoardLayer();
+		if (squareBatch != null) {
+			MemoryUtil.memFree(squareBatch);
+			squareBatch = null;
+		}
 	}
 }
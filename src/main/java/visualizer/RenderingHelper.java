@@ -1,11 +1,12 @@
 package visualizer;
 
-import game.Game;
+import game.Frame;
 import game.Game.State;
-import logic.Piece;
+import logic.BoardView;
 import logic.Piece.PieceType;
-import logic.Sprite;
 import logic.World;
+import logic.WorldEventBuffer;
+import logic.WorldSnapshot;
 
 import java.util.ArrayList;
 
@@ -13,46 +14,71 @@ import java.util.ArrayList;
 // It mostly uses the low level functions provided by the Renderer class
 public class RenderingHelper {
 
+    private static final float[] BOX_COLOR = new float[]{0f, 0f, 0f, 1f};
+    private static final float[] SCORE_COLOR = new float[]{0.7f, 0.7f, 0.7f, 1f};
+
     private final Renderer renderer;
     private final float stageWidth = 0.9f;
     private final float stageHeight = 1.8f;
     private final float sideBoxWidth = 0.4f;
     private final float sideBoxHeight = 0.5f;
 
-    // Draw logic
+    // Draw logic. The timers count ticks and the times are the timers between two ticks
     private int clearEffectTimer = 0;
     private int dropEffectTimer = 0;
     private int gameOverEffectTimer = 0;
+    private float clearEffectTime = 0;
+    private float dropEffectTime = 0;
+    private float gameOverEffectTime = 0;
     private float effectYChange = 0;
     private State previousState;
+    private int previousUpdateCount = 0;
+    // Reads the events of the drawn world. Created when the world is drawn for the first time
+    private WorldEventBuffer worldEventBuffer;
+    private WorldEventBuffer.Cursor worldEvents;
+    // Rows that were cleared most recently and are flashed during the clear effect
+    private final int[] clearedRows = new int[World.PLAYABLE_WORLD_HEIGHT];
+    private int clearedRowCount = 0;
+    private final float[] clearFlashColor = new float[]{1f, 1f, 1f, 1f};
+    // Written by convertSpriteCoords, so converting a square's position doesn't make a new array every time
+    private final float[] spriteCoords = new float[2];
+    // Hash of the board that is drawn on the board layer of the renderer
+    private long boardLayerHash;
 
     public RenderingHelper(Renderer renderer) {
         this.renderer = renderer;
     }
 
-    public void drawWorld(World world, State state) {
+    /**
+     * @param alpha How far the time is from the frame's tick to the next one, between 0 and 1
+     */
+    public void drawFrame(Frame frame, float alpha) {
 
-        updateLogic(world, state);
+        WorldSnapshot world = frame.getSnapshot();
+        State state = frame.getState();
+        updateLogic(frame, alpha);
 
         // Reset
         renderer.reset();
 
         // Draw
+        // The squares are queued and drawn together when the batch is flushed, so whatever is on top of them is drawn after that
         if(state == State.Running) {
-            drawStage();
-            drawPlacedPieces(world.getPlacedSquares());
-            drawNextBlockBox(world.getNextPieceType());
+            drawPlacedPieces(world);
+            drawNextBlockBox(world.getNextPieceType(0));
             drawStoredBlockBox(world.getStoredPieceType());
-            drawCurrentPiece(world.getCurrentPiece());
+            drawCurrentPiece(world, alpha);
+            renderer.flushTetrisPieces();
+            drawClearedRows();
             drawScore(world.getScore());
         }
         else if(state == State.GameOver) {
-            if(gameOverEffectTimer > 0) {
-                drawStage();
-                drawPlacedPieces(world.getPlacedSquares());
-                drawNextBlockBox(world.getNextPieceType());
+            if(gameOverEffectTime > 0) {
+                drawPlacedPieces(world);
+                drawNextBlockBox(world.getNextPieceType(0));
                 drawStoredBlockBox(world.getStoredPieceType());
-                drawCurrentPiece(world.getCurrentPiece());
+                drawCurrentPiece(world, alpha);
+                renderer.flushTetrisPieces();
                 drawScore(world.getScore());
             }
             drawGameOverScreen(world.getScore());
@@ -65,7 +91,17 @@ public class RenderingHelper {
         renderer.draw();
     }
 
-    private void updateLogic(World world, State newState) {
+    private void updateLogic(Frame frame, float alpha) {
+
+        State newState = frame.getState();
+
+        // The effects last a number of ticks, so advance them by the updates since the last frame.
+        // None of them is longer than the game over effect, so older updates can be skipped
+        int elapsedTicks = Math.min(frame.getUpdateCount() - previousUpdateCount, 60);
+        previousUpdateCount = frame.getUpdateCount();
+        for(int i = 0; i < elapsedTicks; i++) {
+            advanceEffects();
+        }
 
         // Logic
         if(previousState == State.Running && newState == State.GameOver) {
@@ -74,14 +110,55 @@ public class RenderingHelper {
         if(newState != State.GameOver && gameOverEffectTimer != 0) {
             gameOverEffectTimer = 0;
         }
-        if(world.wasRowCleared())
-            clearEffectTimer = 8;
-        else if(world.wasPieceHardened())
-            dropEffectTimer = 6;
+        if(worldEventBuffer != frame.getEvents()) {
+            worldEventBuffer = frame.getEvents();
+            worldEvents = worldEventBuffer.createCursor();
+        }
+        // Every event since the last frame, in order
+        while(worldEvents.next()) {
+            switch(worldEvents.getType()) {
+                case PieceLocked: {
+                    dropEffectTimer = 6;
+                    break;
+                }
+                case LinesCleared: {
+                    clearEffectTimer = 8;
+                    clearedRowCount = worldEvents.getClearedRowCount();
+                    for(int i = 0; i < clearedRowCount; i++) {
+                        clearedRows[i] = worldEvents.getClearedRow(i);
+                    }
+                    break;
+                }
+            }
+        }
+
+        // Continue the effects smoothly between two ticks
+        gameOverEffectTime = gameOverEffectTimer > 0 ? Math.max(0f, gameOverEffectTimer - alpha) : 0;
+        clearEffectTime = clearEffectTimer > 0 ? Math.max(0f, clearEffectTimer - alpha) : 0;
+        dropEffectTime = dropEffectTimer > 0 ? Math.max(0f, dropEffectTimer - alpha) : 0;
+
+        if(gameOverEffectTimer > 0) {
+            effectYChange = (float) Math.pow(gameOverEffectTime - 60f, 2f) / 1200f;
+        }
+        else if(clearEffectTimer > 0) {
+            effectYChange = clearEffectTime * (clearEffectTime - 8f) / 400f;
+        }
+        else if(dropEffectTimer > 0) {
+            effectYChange = dropEffectTime * (dropEffectTime - 6f) / 800f;
+        }
+        else {
+            effectYChange = 0;
+        }
+
+        previousState = newState;
+
+    }
+
+    // Count down the effect timers by one tick. A stronger effect cancels the weaker ones
+    private void advanceEffects() {
 
         if(gameOverEffectTimer > 0) {
             gameOverEffectTimer--;
-            effectYChange = (float) Math.pow(gameOverEffectTimer - 60f, 2f) / 1200f;
             if(dropEffectTimer != 0)
                 dropEffectTimer = 0;
             if(clearEffectTimer != 0)
@@ -89,17 +166,12 @@ public class RenderingHelper {
         }
         else if(clearEffectTimer > 0) {
             clearEffectTimer--;
-            effectYChange = clearEffectTimer * (clearEffectTimer - 8f) / 400f;
             if(dropEffectTimer != 0)
                 dropEffectTimer = 0;
         }
         else if(dropEffectTimer > 0) {
             dropEffectTimer--;
-            effectYChange = dropEffectTimer * (dropEffectTimer - 6f) / 800f;
         }
-
-        previousState = newState;
-
     }
 
     private void drawSquare(int x, int y, int colorIndex, boolean ghostBlock) {
@@ -108,48 +180,21 @@ public class RenderingHelper {
         drawSquare(coords[0], coords[1], colorIndex, ghostBlock);
     }
 
+    // Queue the square. It is drawn when the renderer flushes the squares
     private void drawSquare(float x, float y, int colorIndex, boolean ghostBlock) {
+        queueSquare(x, y + effectYChange, colorIndex, ghostBlock);
+    }
 
-        if(ghostBlock) {
-
-            float[][] colors = new float[][]{
-                    new float[]{0f, 0f, 0f, 1f},
-                    new float[]{0f, 0f, 0f, 1f},
-                    new float[]{0f, 0f, 0f, 1f},
-                    new float[]{0f, 0f, 0f, 1f},
-                    new float[]{0f, 0f, 0f, 1f},
-                    Colors.brightenedPieceColors[colorIndex]
-            };
-
-            renderer.drawTetrisPiece(
-                    x+stageWidth/World.WORLD_WIDTH/2,
-                    y-stageHeight/World.WORLD_HEIGHT/2 + effectYChange,
-                    stageWidth/World.WORLD_WIDTH/2,
-                    stageHeight/World.WORLD_HEIGHT/2,
-                    0,
-                    colors,
-                    0.20f
-            );
-            return;
-        }
-
-        float[][] colors = new float[][]{
-                Colors.pieceColors[colorIndex],
-                Colors.pieceColors2[colorIndex],
-                Colors.pieceColors3[colorIndex],
-                Colors.pieceColors4[colorIndex],
-                Colors.pieceColors5[colorIndex],
-                Colors.brightenedPieceColors[colorIndex]
-        };
+    // Queue the square without moving it with the effects
+    private void queueSquare(float x, float y, int colorIndex, boolean ghostBlock) {
 
-        renderer.drawTetrisPiece(
+        renderer.queueTetrisPiece(
                 x+stageWidth/World.WORLD_WIDTH/2,
-                y-stageHeight/World.WORLD_HEIGHT/2 + effectYChange,
+                y-stageHeight/World.WORLD_HEIGHT/2,
                 stageWidth/World.WORLD_WIDTH/2,
                 stageHeight/World.WORLD_HEIGHT/2,
-                0,
-                colors,
-                1f
+                ghostBlock ? colorIndex + Colors.GHOST_PALETTE_ROW_OFFSET : colorIndex,
+                ghostBlock ? 0.20f : 1f
         );
     }
 
@@ -158,13 +203,13 @@ public class RenderingHelper {
         float textSize = 0.06f;
         String scoreString = Integer.toString(score);
         for(int i = 0; i < scoreString.length(); i++) {
-            drawNumber(Integer.parseInt(Character.toString(scoreString.charAt(i))), stageWidth*3f/5f + i*0.12f, 1-stageHeight+textSize + effectYChange, textSize, new float[]{0.7f, 0.7f, 0.7f, 1f});
+            drawNumber(scoreString.charAt(i) - '0', stageWidth*3f/5f + i*0.12f, 1-stageHeight+textSize + effectYChange, textSize, SCORE_COLOR);
         }
     }
 
     private void drawGameOverScreen(int score) {
 
-        float widthMultiplier = (30-gameOverEffectTimer)/30f;
+        float widthMultiplier = (30-gameOverEffectTime)/30f;
         if(widthMultiplier < 0)
             widthMultiplier = 0;
 
@@ -173,8 +218,8 @@ public class RenderingHelper {
                 0.1f,
                 0.8f*widthMultiplier,
                 0.8f*widthMultiplier*renderer.gameOverTexture.height/renderer.gameOverTexture.width,
-                gameOverEffectTimer/4f,
-                renderer.gameOverTexture.textureHandle
+                gameOverEffectTime/4f,
+                renderer.gameOverTexture
         );
 
         renderer.drawImage(
@@ -182,14 +227,14 @@ public class RenderingHelper {
                 -0.15f,
                 0.6f*widthMultiplier,
                 0.6f*widthMultiplier*renderer.pressContinueTexture.height/renderer.pressContinueTexture.width,
-                gameOverEffectTimer/4f,
-                renderer.pressContinueTexture.textureHandle
+                gameOverEffectTime/4f,
+                renderer.pressContinueTexture
         );
 
         float textSize = 0.06f * widthMultiplier;
         String scoreString = Integer.toString(score);
         for(int i = 0; i < scoreString.length(); i++) {
-            drawNumber(Integer.parseInt(Character.toString(scoreString.charAt(i))), -0.8f + i*0.12f, 0.8f, textSize, new float[]{0.7f, 0.7f, 0.7f, 1f});
+            drawNumber(scoreString.charAt(i) - '0', -0.8f + i*0.12f, 0.8f, textSize, SCORE_COLOR);
         }
     }
 
@@ -201,36 +246,72 @@ public class RenderingHelper {
                 0.5f,
                 0.5f*renderer.pressStartTexture.height/renderer.pressStartTexture.width,
                 0,
-                renderer.pressStartTexture.textureHandle
+                renderer.pressStartTexture
         );
     }
 
-    private void drawStage() {
+    /**
+     * @param yChange How much the bottom of the stage is moved up
+     */
+    private void drawStage(float yChange) {
 
         // Black rectangle
         renderer.drawRectangle(
                 -stageWidth/2,
                 1f,
                 stageWidth,
-                stageHeight + 1f-stageHeight/2 - effectYChange,
-                new float[]{0f, 0f, 0f, 1f}
+                stageHeight + 1f-stageHeight/2 - yChange,
+                BOX_COLOR
         );
     }
 
-    private void drawPlacedPieces(int[][] placedSquares) {
-
-        // Draw placed squares
-        for(int i = 0; i < placedSquares.length; i++) {
-            for(int j = 0; j < placedSquares[0].length; j++) {
-                if(placedSquares[i][j] != 0) {
-                    drawSquare(
-                            j*World.GRID_SIZE,
-                            (i+1)*World.GRID_SIZE,
-                            placedSquares[i][j]-1,
-                            false
-                    );
+    private void drawPlacedPieces(BoardView board) {
+
+        // The placed squares only change when a piece is locked or rows are cleared, so they are kept on a layer
+        // that is drawn again only when the board has changed. The hash is used instead of the events, because the
+        // events can be ahead of the drawn frame
+        // The stage is on the layer as well. It reaches the top of the screen, so when an effect moves the layer there
+        // would be a gap above it. While an effect runs the stage is drawn on the screen under the layer to fill it
+        if(effectYChange != 0)
+            drawStage(effectYChange);
+        if(!renderer.isBoardLayerValid() || board.getBoardHash() != boardLayerHash) {
+            renderer.beginBoardLayer();
+            drawStage(0);
+            for(int i = 0; i < World.PLAYABLE_WORLD_HEIGHT; i++) {
+                // Skip empty rows
+                if(board.getRowMask(i) == 0)
+                    continue;
+                for(int j = 0; j < World.WORLD_WIDTH; j++) {
+                    if(board.isOccupied(j, i)) {
+                        float[] coords = convertSpriteCoords(j*World.GRID_SIZE, (i+1)*World.GRID_SIZE);
+                        queueSquare(coords[0], coords[1], board.getSquare(j, i)-1, false);
+                    }
                 }
             }
+            renderer.endBoardLayer();
+            boardLayerHash = board.getBoardHash();
+        }
+
+        // Draw placed squares
+        renderer.drawBoardLayer(effectYChange);
+    }
+
+    private void drawClearedRows() {
+
+        if(clearEffectTime <= 0)
+            return;
+
+        // Fade out a white flash where the cleared rows were
+        clearFlashColor[3] = clearEffectTime / 8f * 0.6f;
+        for(int i = 0; i < clearedRowCount; i++) {
+            float[] coords = convertSpriteCoords(0, (clearedRows[i]+1)*World.GRID_SIZE);
+            renderer.drawRectangle(
+                    coords[0],
+                    coords[1] + effectYChange,
+                    stageWidth,
+                    stageHeight/World.WORLD_HEIGHT,
+                    clearFlashColor
+            );
         }
     }
 
@@ -242,16 +323,9 @@ public class RenderingHelper {
                 0.8f + effectYChange,
                 sideBoxWidth,
                 sideBoxHeight,
-                new float[]{0f, 0f, 0f, 1f}
+                BOX_COLOR
         );
 
-        int[][] pieceShape = nextPiece.getShape();
-        // Center distance is 1 except in the O piece where it is 0
-        int centerDistance = 1;
-        if(pieceShape.length == 2) {
-            centerDistance = 0;
-        }
-
         float positionFixX = 0f;
         float positionFixY = 0f;
 
@@ -268,14 +342,10 @@ public class RenderingHelper {
             }
         }
 
-        for(int i = 0; i < pieceShape.length; i++) {
-            for(int j = 0; j < pieceShape[0].length; j++) {
-                if(pieceShape[i][j] != 0) {
-                    drawSquare(stageWidth/2 + (1-(stageWidth/2))/2 - stageWidth/World.WORLD_WIDTH/2 + (j-centerDistance)*stageWidth/World.WORLD_WIDTH + positionFixX,
-                            0.8f-sideBoxHeight/2 + (pieceShape.length-1-i-centerDistance)*stageWidth/World.WORLD_WIDTH + positionFixY,
-                            nextPiece.getTypeIndex(), false);
-                }
-            }
+        for(int i = 0; i < PieceType.CELL_COUNT; i++) {
+            drawSquare(stageWidth/2 + (1-(stageWidth/2))/2 - stageWidth/World.WORLD_WIDTH/2 + nextPiece.getCellXOffset(0, i)*stageWidth/World.WORLD_WIDTH + positionFixX,
+                    0.8f-sideBoxHeight/2 + nextPiece.getCellYOffset(0, i)*stageWidth/World.WORLD_WIDTH + positionFixY,
+                    nextPiece.getTypeIndex(), false);
         }
 
     }
@@ -288,20 +358,13 @@ public class RenderingHelper {
                 0.8f + effectYChange,
                 sideBoxWidth,
                 sideBoxHeight,
-                new float[]{0f, 0f, 0f, 1f}
+                BOX_COLOR
         );
 
         // Return if there is no stored piece
         if(storedPiece == null)
             return;
 
-        int[][] pieceShape = storedPiece.getShape();
-        // Center distance is 1 except in the O piece where it is 0
-        int centerDistance = 1;
-        if(pieceShape.length == 2) {
-            centerDistance = 0;
-        }
-
         float positionFixX = 0f;
         float positionFixY = 0f;
 
@@ -318,49 +381,41 @@ public class RenderingHelper {
             }
         }
 
-        for(int i = 0; i < pieceShape.length; i++) {
-            for(int j = 0; j < pieceShape[0].length; j++) {
-                if(pieceShape[i][j] != 0) {
-                    drawSquare(- stageWidth/2 - (1-(stageWidth/2))/2 - stageWidth/World.WORLD_WIDTH/2 + (j-centerDistance)*stageWidth/World.WORLD_WIDTH + positionFixX,
-                            0.8f-sideBoxHeight/2 + (pieceShape.length-1-i-centerDistance)*stageWidth/World.WORLD_WIDTH + positionFixY,
-                            storedPiece.getTypeIndex(), false);
-                }
-            }
+        for(int i = 0; i < PieceType.CELL_COUNT; i++) {
+            drawSquare(- stageWidth/2 - (1-(stageWidth/2))/2 - stageWidth/World.WORLD_WIDTH/2 + storedPiece.getCellXOffset(0, i)*stageWidth/World.WORLD_WIDTH + positionFixX,
+                    0.8f-sideBoxHeight/2 + storedPiece.getCellYOffset(0, i)*stageWidth/World.WORLD_WIDTH + positionFixY,
+                    storedPiece.getTypeIndex(), false);
         }
+
     }
 
-    private void drawCurrentPiece(Piece piece) {
+    private void drawCurrentPiece(WorldSnapshot world, float alpha) {
 
-        if(piece == null)
+        PieceType type = world.getPieceType();
+        if(type == null)
             return;
 
-        int[][] pieceShape = piece.getPieceShape();
-        // Center distance is 1 except in the O piece where it is 0
-        int centerDistance = 1;
-        if (pieceShape.length == 2) {
-            centerDistance = 0;
-        }
+        int rotation = world.getPieceRotation();
+        int ghostBlockHeight = world.getGhostPieceY();
+
+        // Fall smoothly from the previous tick's position. Bigger jumps, like a new piece or a rotation kick, aren't smoothed
+        float pieceY = world.getPieceY();
+        int fallDistance = world.getPreviousPieceY() - world.getPieceY();
+        if(fallDistance > 0 && fallDistance <= World.GRID_SIZE)
+            pieceY = world.getPreviousPieceY() - fallDistance * alpha;
 
         // Draw ghost block first
-        for (int i = 0; i < pieceShape.length; i++) {
-            for (int j = 0; j < pieceShape[0].length; j++) {
-                if (pieceShape[i][j] != 0) {
-                    int x = piece.getxPos() + (j - centerDistance) * World.GRID_SIZE;
-                    int y = piece.getGhostBlockHeight() + ((pieceShape.length - i) - centerDistance) * World.GRID_SIZE;
-                    drawSquare(x, y, piece.getPieceType().getTypeIndex(), true);
-                }
-            }
+        for (int i = 0; i < PieceType.CELL_COUNT; i++) {
+            int x = world.getPieceX() + type.getCellXOffset(rotation, i) * World.GRID_SIZE;
+            int y = ghostBlockHeight + (type.getCellYOffset(rotation, i) + 1) * World.GRID_SIZE;
+            drawSquare(x, y, type.getTypeIndex(), true);
         }
 
         // Draw the actual piece
-        for (int i = 0; i < pieceShape.length; i++) {
-            for (int j = 0; j < pieceShape[0].length; j++) {
-                if (pieceShape[i][j] != 0) {
-                    int x = piece.getxPos() + (j - centerDistance) * World.GRID_SIZE;
-                    int y = piece.getyPos() + ((pieceShape.length - i) - centerDistance) * World.GRID_SIZE;
-                    drawSquare(x, y, piece.getPieceType().getTypeIndex(), false);
-                }
-            }
+        for (int i = 0; i < PieceType.CELL_COUNT; i++) {
+            int x = world.getPieceX() + type.getCellXOffset(rotation, i) * World.GRID_SIZE;
+            float[] coords = convertSpriteCoords(x, pieceY + (type.getCellYOffset(rotation, i) + 1) * World.GRID_SIZE);
+            drawSquare(coords[0], coords[1], type.getTypeIndex(), false);
         }
     }
 
@@ -391,10 +446,12 @@ public class RenderingHelper {
 
     }
 
-    private float[] convertSpriteCoords(int x, int y) {
-        return new float[] {
-                -stageWidth / 2f + (stageWidth / World.WORLD_WIDTH * ((float) x / World.GRID_SIZE)),
-                -stageHeight / 2f + (stageHeight / World.WORLD_HEIGHT * ((float) y / World.GRID_SIZE))
-        };
+    /**
+     * @return Return the position on the screen. The array is reused by the next call
+     */
+    private float[] convertSpriteCoords(float x, float y) {
+        spriteCoords[0] = -stageWidth / 2f + (stageWidth / World.WORLD_WIDTH * (x / World.GRID_SIZE));
+        spriteCoords[1] = -stageHeight / 2f + (stageHeight / World.WORLD_HEIGHT * (y / World.GRID_SIZE));
+        return spriteCoords;
     }
 }
@@ -1,22 +1,33 @@
 package visualizer;
 
+import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+
+import org.lwjgl.system.MemoryStack;
 
 import static org.lwjgl.opengles.GLES32.*;
 
+// A linked vertex and fragment shader
+// The locations of every active uniform are looked up once when the program is linked,
+// so drawing doesn't have to query the driver by name
 public class ShaderProgram {
 
 	private final int programId;
 	private int vertexShaderId;
 	private int fragmentShaderId;
 
+	// Locations by name. Arrays are stored without the [0] suffix
+	private final HashMap<String, Integer> uniformLocations;
+
 	public ShaderProgram() throws Exception {
 
 		programId = glCreateProgram();
 		if(programId == 0) {
 			throw new Exception("Could not create Shader");
 		}
+		uniformLocations = new HashMap<String, Integer>();
 	}
 
 
@@ -73,6 +84,50 @@ public class ShaderProgram {
 			System.err.println("Warning validating Shader code: " + glGetProgramInfoLog(programId, 1024));
 		}
 
+		cacheLocations();
+	}
+
+	// Store the locations of the active uniforms
+	private void cacheLocations() {
+
+		uniformLocations.clear();
+
+		try(MemoryStack stack = MemoryStack.stackPush()) {
+			IntBuffer size = stack.mallocInt(1);
+			IntBuffer type = stack.mallocInt(1);
+
+			int uniformCount = glGetProgrami(programId, GL_ACTIVE_UNIFORMS);
+			for(int i = 0; i < uniformCount; i++) {
+				String name = stripArraySuffix(glGetActiveUniform(programId, i, size, type));
+				uniformLocations.put(name, glGetUniformLocation(programId, name));
+			}
+		}
+	}
+
+	private static String stripArraySuffix(String name) {
+		return name.endsWith("[0]") ? name.substring(0, name.length() - 3) : name;
+	}
+
+	/**
+	 * @return Return the location of the uniform or -1 if the program doesn't use it. Setting -1 does nothing
+	 */
+	public int getUniformLocation(String name) {
+		Integer location = uniformLocations.get(name);
+		return location == null ? -1 : location;
+	}
+
+	// The setters change the uniforms of this program. It has to be bound
+
+	public void setUniform(int location, int value) {
+		glUniform1i(location, value);
+	}
+
+	public void setUniform(int location, float value) {
+		glUniform1f(location, value);
+	}
+
+	public void setUniform(int location, float x, float y, float z, float w) {
+		glUniform4f(location, x, y, z, w);
 	}
 	
 	public int getProgramId() {
@@ -0,0 +1,249 @@
+package visualizer;
+
+import static org.lwjgl.opengles.GLES32.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+import visualizer.textures.Texture;
+
+// Collects triangles and textured quads and draws them with as few draw calls as possible
+// The vertices are rotated and moved on the CPU and written to a ring buffer in a VBO. Each flush writes after the
+// previous one without waiting for the GPU, and the buffer is orphaned when it wraps around.
+// Everything that is batched is drawn in order when the texture changes or flush() is called
+public class SpriteBatch {
+
+	// Position, texture coordinate and color
+	private static final int FLOATS_PER_VERTEX = 2 + 2 + 4;
+	private static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * Float.BYTES;
+	// How many vertices can be batched before they have to be drawn
+	private static final int BATCH_CAPACITY = 6 * 1024;
+	// How many batches fit in the ring buffer before it is orphaned
+	private static final int RING_BATCHES = 8;
+	private static final long RING_SIZE = (long) BATCH_CAPACITY * RING_BATCHES * VERTEX_STRIDE;
+
+	private static final float[] WHITE = new float[]{1f, 1f, 1f, 1f};
+
+	private final ShaderProgram shaderProgram;
+	private final int vaoID;
+	private final int vboID;
+	// Texture of shapes that don't have an image and the texture coordinates of a white pixel in it
+	private final int whiteTextureHandle;
+	private int whiteTexelTextureHandle;
+	private float whiteU = 0.5f;
+	private float whiteV = 0.5f;
+
+	// Vertices of the current batch
+	private FloatBuffer vertices;
+	private int vertexCount;
+	private int textureHandle;
+	// Where the next batch is written in the ring buffer
+	private long ringOffset;
+
+	public SpriteBatch() throws Exception {
+
+		shaderProgram = new ShaderProgram();
+		shaderProgram.createVertexShader("src/main/glsl/batch_vertex.glsl");
+		shaderProgram.createFragmentShader("src/main/glsl/batch_fragment.glsl");
+		shaderProgram.link();
+
+		// The texture unit never changes
+		shaderProgram.bind();
+		shaderProgram.setUniform(shaderProgram.getUniformLocation("spriteTexture"), 0);
+		shaderProgram.unbind();
+
+		// Create VAO
+		vaoID = glGenVertexArrays();
+		glBindVertexArray(vaoID);
+
+		// Create the ring buffer
+		vboID = glGenBuffers();
+		glBindBuffer(GL_ARRAY_BUFFER, vboID);
+		glBufferData(GL_ARRAY_BUFFER, RING_SIZE, GL_STREAM_DRAW);
+
+		// Define the structure of the data
+		glVertexAttribPointer(0, 2, GL_FLOAT, false, VERTEX_STRIDE, 0);
+		glVertexAttribPointer(1, 2, GL_FLOAT, false, VERTEX_STRIDE, 2 * Float.BYTES);
+		glVertexAttribPointer(2, 4, GL_FLOAT, false, VERTEX_STRIDE, 4 * Float.BYTES);
+		glEnableVertexAttribArray(0);
+		glEnableVertexAttribArray(1);
+		glEnableVertexAttribArray(2);
+
+		// Unbind the VBO and the VAO
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		glBindVertexArray(0);
+
+		// Create the white texture
+		ByteBuffer whitePixel = MemoryUtil.memAlloc(4);
+		whitePixel.put((byte) 255).put((byte) 255).put((byte) 255).put((byte) 255).flip();
+		whiteTextureHandle = glGenTextures();
+		glBindTexture(GL_TEXTURE_2D, whiteTextureHandle);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, whitePixel);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glBindTexture(GL_TEXTURE_2D, 0);
+		MemoryUtil.memFree(whitePixel);
+
+		vertices = MemoryUtil.memAllocFloat(BATCH_CAPACITY * FLOATS_PER_VERTEX);
+		whiteTexelTextureHandle = whiteTextureHandle;
+		textureHandle = whiteTextureHandle;
+	}
+
+	/**
+	 * Draw shapes without an image with a white pixel of another texture, like an atlas. Then shapes and
+	 * images of that texture can be drawn together
+	 * @param whiteTexel Region of a white pixel
+	 */
+	public void setWhiteTexel(Texture whiteTexel) {
+
+		whiteTexelTextureHandle = whiteTexel.textureHandle;
+		whiteU = (whiteTexel.u0 + whiteTexel.u1) / 2f;
+		whiteV = (whiteTexel.v0 + whiteTexel.v1) / 2f;
+	}
+
+	/**
+	 * Batch a triangle with the given color. The coordinates are rotated around the origin
+	 * @param coords x, y and z of each corner. z is ignored
+	 */
+	public void addTriangle(float[] coords, float rotationAngle, float[] color) {
+
+		prepare(whiteTexelTextureHandle, 3);
+
+		float cos = (float) Math.cos(rotationAngle);
+		float sin = (float) Math.sin(rotationAngle);
+		for(int i = 0; i < 3; i++) {
+			float x = coords[i*3];
+			float y = coords[i*3+1];
+			putVertex(cos*x - sin*y, sin*x + cos*y, whiteU, whiteV, color);
+		}
+	}
+
+	/**
+	 * Batch an axis aligned rectangle with the given color
+	 * @param xPos Left edge
+	 * @param yPos Top edge
+	 */
+	public void addRectangle(float xPos, float yPos, float width, float height, float[] color) {
+
+		prepare(whiteTexelTextureHandle, 6);
+
+		putVertex(xPos, yPos, whiteU, whiteV, color);
+		putVertex(xPos, yPos-height, whiteU, whiteV, color);
+		putVertex(xPos+width, yPos-height, whiteU, whiteV, color);
+		putVertex(xPos, yPos, whiteU, whiteV, color);
+		putVertex(xPos+width, yPos, whiteU, whiteV, color);
+		putVertex(xPos+width, yPos-height, whiteU, whiteV, color);
+	}
+
+	/**
+	 * Batch a part of a texture. The quad is scaled, then rotated around its center and then moved
+	 * @param xPos Center x
+	 * @param yPos Center y
+	 * @param width Half of the width
+	 * @param height Half of the height. A negative height flips the image
+	 * @param u0 Texture coordinate of the left edge
+	 * @param v0 Texture coordinate of the top edge
+	 * @param u1 Texture coordinate of the right edge
+	 * @param v1 Texture coordinate of the bottom edge
+	 */
+	public void addImage(float xPos, float yPos, float width, float height, float rotationAngle, int textureHandle,
+						 float u0, float v0, float u1, float v1) {
+
+		prepare(textureHandle, 6);
+
+		float cos = (float) Math.cos(rotationAngle);
+		float sin = (float) Math.sin(rotationAngle);
+		// Corners after scaling and rotating
+		float rightX = cos*width;
+		float rightY = sin*width;
+		float upX = -sin*height;
+		float upY = cos*height;
+
+		float bottomLeftX = xPos - rightX - upX, bottomLeftY = yPos - rightY - upY;
+		float topLeftX = xPos - rightX + upX, topLeftY = yPos - rightY + upY;
+		float bottomRightX = xPos + rightX - upX, bottomRightY = yPos + rightY - upY;
+		float topRightX = xPos + rightX + upX, topRightY = yPos + rightY + upY;
+
+		// First triangle
+		putVertex(bottomLeftX, bottomLeftY, u0, v1, WHITE);
+		putVertex(topLeftX, topLeftY, u0, v0, WHITE);
+		putVertex(bottomRightX, bottomRightY, u1, v1, WHITE);
+		// Second triangle
+		putVertex(topLeftX, topLeftY, u0, v0, WHITE);
+		putVertex(bottomRightX, bottomRightY, u1, v1, WHITE);
+		putVertex(topRightX, topRightY, u1, v0, WHITE);
+	}
+
+	/**
+	 * Draw everything that has been batched
+	 */
+	public void flush() {
+
+		if(vertexCount == 0)
+			return;
+
+		long size = (long) vertexCount * VERTEX_STRIDE;
+		vertices.flip();
+
+		glBindBuffer(GL_ARRAY_BUFFER, vboID);
+
+		// Orphan the buffer when the batch doesn't fit. The driver keeps the old storage until the GPU is done with it
+		int mapFlags = GL_MAP_WRITE_BIT | GL_MAP_UNSYNCHRONIZED_BIT | GL_MAP_INVALIDATE_RANGE_BIT;
+		if(ringOffset + size > RING_SIZE) {
+			glBufferData(GL_ARRAY_BUFFER, RING_SIZE, GL_STREAM_DRAW);
+			ringOffset = 0;
+		}
+
+		// Nothing that is drawing can use this part of the buffer, so there is no need to wait for the GPU
+		ByteBuffer mappedBuffer = glMapBufferRange(GL_ARRAY_BUFFER, ringOffset, size, mapFlags);
+		if(mappedBuffer != null) {
+			MemoryUtil.memCopy(MemoryUtil.memAddress(vertices), MemoryUtil.memAddress(mappedBuffer), size);
+			glUnmapBuffer(GL_ARRAY_BUFFER);
+		}
+		else {
+			glBufferSubData(GL_ARRAY_BUFFER, ringOffset, vertices);
+		}
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		// Draw the vertices
+		shaderProgram.bind();
+		glBindVertexArray(vaoID);
+		glBindTexture(GL_TEXTURE_2D, textureHandle);
+		glDrawArrays(GL_TRIANGLES, (int) (ringOffset / VERTEX_STRIDE), vertexCount);
+
+		// Restore state
+		glBindVertexArray(0);
+		glBindTexture(GL_TEXTURE_2D, 0);
+		shaderProgram.unbind();
+
+		ringOffset += size;
+		vertices.clear();
+		vertexCount = 0;
+	}
+
+	public void cleanup() {
+
+		shaderProgram.cleanup();
+		glDeleteBuffers(vboID);
+		glDeleteVertexArrays(vaoID);
+		glDeleteTextures(whiteTextureHandle);
+		if(vertices != null) {
+			MemoryUtil.memFree(vertices);
+			vertices = null;
+		}
+	}
+
+	// Flush if the vertices can't be added to the current batch
+	private void prepare(int textureHandle, int newVertices) {
+
+		if(vertexCount > 0 && (textureHandle != this.textureHandle || vertexCount + newVertices > BATCH_CAPACITY))
+			flush();
+		this.textureHandle = textureHandle;
+		vertexCount += newVertices;
+	}
+
+	private void putVertex(float x, float y, float u, float v, float[] color) {
+		vertices.put(x).put(y).put(u).put(v).put(color[0]).put(color[1]).put(color[2]).put(color[3]);
+	}
+}
@@ -4,9 +4,9 @@ import static org.lwjgl.glfw.GLFW.glfwInit;
 import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
 import static org.lwjgl.glfw.GLFW.glfwTerminate;
 
-import game.Game;
+import engine.EngineMetrics;
+import game.Frame;
 import game.GameInfo;
-import logic.World;
 import org.lwjgl.glfw.GLFWErrorCallback;
 
 // This class is responsible for handling most of the basic rendering logic and creating and destroying the window
@@ -45,18 +45,36 @@ public class Visualizer {
         renderingHelper = new RenderingHelper(renderer);
     }
 
-    public void update(World world, Game.State state) {
+    /**
+     * @param alpha How far the time is from the frame's tick to the next one, between 0 and 1
+     */
+    public void update(Frame frame, float alpha) {
 
         renderer.pollForWindowEvents();
 
         if(!window.shouldClose()) {
-            renderingHelper.drawWorld(world, state);
+            renderingHelper.drawFrame(frame, alpha);
         }
         else {
             stop();
         }
     }
 
+    /**
+     * Record the timings of the renderer into the metrics of the engine
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        renderer.setSwapTimes(metrics.getSwapTimes());
+    }
+
+    /**
+     * Change the colors of the tetris pieces. Has to be called on the thread that renders
+     * @param palette Colors in the layout of Colors.createPalette()
+     */
+    public void setPalette(float[] palette) {
+        renderer.setPalette(palette);
+    }
+
     public Window getWindow() {
         return window;
     }
@@ -1,17 +1,32 @@
 package visualizer.textures;
 
+// An image that is drawn from a GL texture
+// The image can be a region of a bigger texture, like an atlas. The texture coordinates of the region are
+// from the top left corner to the bottom right corner
 public class Texture {
 
     public final String path;
     public final int textureHandle;
     public final int width;
     public final int height;
+    public final float u0;
+    public final float v0;
+    public final float u1;
+    public final float v1;
 
     protected Texture(String path, int textureHandle, int width, int height) {
+        this(path, textureHandle, width, height, 0f, 0f, 1f, 1f);
+    }
+
+    protected Texture(String path, int textureHandle, int width, int height, float u0, float v0, float u1, float v1) {
 
         this.path = path;
         this.textureHandle = textureHandle;
         this.width = width;
         this.height = height;
+        this.u0 = u0;
+        this.v0 = v0;
+        this.u1 = u1;
+        this.v1 = v1;
     }
 }
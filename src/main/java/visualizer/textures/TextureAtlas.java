@@ -0,0 +1,132 @@
+package visualizer.textures;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Many images packed into one texture, so that drawing them one after another doesn't change the bound texture
+// The images are packed on shelves: from the tallest to the shortest, left to right, and a new shelf is started
+// below the previous one when an image doesn't fit. Every image has a border of its own edge pixels,
+// so sampling next to an edge never picks up a pixel of another image
+public class TextureAtlas {
+
+    // Path of the white texel. Shapes without an image can be drawn with it without changing the texture
+    public static final String WHITE_TEXEL = "white";
+
+    // Pixels around every image
+    private static final int PADDING = 1;
+
+    public final int textureHandle;
+    public final int width;
+    public final int height;
+    private final HashMap<String, Texture> textures;
+
+    TextureAtlas(int textureHandle, int width, int height, HashMap<String, Texture> textures) {
+
+        this.textureHandle = textureHandle;
+        this.width = width;
+        this.height = height;
+        this.textures = textures;
+    }
+
+    /**
+     * @return Return the region of the atlas that has the image of the path
+     */
+    public Texture getTexture(String path) {
+
+        Texture texture = textures.get(path);
+        if(texture == null)
+            throw new IllegalArgumentException("Texture is not in the atlas. Path given: "+path);
+        return texture;
+    }
+
+    /**
+     * @return Return a region in the middle of a white pixel
+     */
+    public Texture getWhiteTexel() {
+        return getTexture(WHITE_TEXEL);
+    }
+
+    // An image that is waiting to be packed. Pixels are RGBA
+    static class Image {
+
+        final String path;
+        final int width;
+        final int height;
+        final ByteBuffer pixels;
+        // Position of the top left corner of the image in the atlas, without the padding
+        int x;
+        int y;
+
+        Image(String path, int width, int height, ByteBuffer pixels) {
+            this.path = path;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    /**
+     * Position the images in the atlas
+     * @param maxSize The maximum width and height of the atlas
+     * @return Return the width and height of the atlas
+     */
+    static int[] pack(ArrayList<Image> images, int maxSize) {
+
+        // Start with a square that has the area of the images, but is at least as wide as the widest image
+        long area = 0;
+        int widestImage = 0;
+        for(Image image : images) {
+            area += (long) (image.width + 2*PADDING) * (image.height + 2*PADDING);
+            widestImage = Math.max(widestImage, image.width + 2*PADDING);
+        }
+        int atlasWidth = Integer.highestOneBit(Math.max(widestImage, (int) Math.ceil(Math.sqrt(area))) - 1) << 1;
+        if(atlasWidth > maxSize)
+            throw new IllegalArgumentException("Images don't fit in an atlas. Width needed: "+atlasWidth+" Maximum size given: "+maxSize);
+
+        ArrayList<Image> sorted = new ArrayList<Image>(images);
+        sorted.sort((a, b) -> b.height - a.height);
+
+        int shelfX = 0;
+        int shelfY = 0;
+        int shelfHeight = 0;
+        for(Image image : sorted) {
+            int paddedWidth = image.width + 2*PADDING;
+            int paddedHeight = image.height + 2*PADDING;
+            // Start a new shelf
+            if(shelfX + paddedWidth > atlasWidth) {
+                shelfY += shelfHeight;
+                shelfX = 0;
+                shelfHeight = 0;
+            }
+            image.x = shelfX + PADDING;
+            image.y = shelfY + PADDING;
+            shelfX += paddedWidth;
+            shelfHeight = Math.max(shelfHeight, paddedHeight);
+        }
+
+        int atlasHeight = shelfY + shelfHeight;
+        if(atlasHeight > maxSize)
+            throw new IllegalArgumentException("Images don't fit in an atlas. Height needed: "+atlasHeight+" Maximum size given: "+maxSize);
+
+        return new int[]{atlasWidth, atlasHeight};
+    }
+
+    /**
+     * Copy the packed images and their borders to the pixels of the atlas
+     */
+    static void copyImages(ArrayList<Image> images, ByteBuffer atlasPixels, int atlasWidth) {
+
+        for(Image image : images) {
+            for(int y = -PADDING; y < image.height + PADDING; y++) {
+                int sourceY = Math.max(0, Math.min(image.height - 1, y));
+                for(int x = -PADDING; x < image.width + PADDING; x++) {
+                    int sourceX = Math.max(0, Math.min(image.width - 1, x));
+                    int source = (sourceY * image.width + sourceX) * 4;
+                    int target = ((image.y + y) * atlasWidth + image.x + x) * 4;
+                    atlasPixels.putInt(target, image.pixels.getInt(source));
+                }
+            }
+        }
+    }
+}
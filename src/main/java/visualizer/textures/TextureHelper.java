@@ -6,6 +6,8 @@ import de.matthiasmann.twl.utils.PNGDecoder;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 import static org.lwjgl.opengles.GLES20.*;
 import static org.lwjgl.opengles.GLES32.glGenTextures;
@@ -15,20 +17,84 @@ public class TextureHelper {
     public static Texture loadTexture(String path) throws IOException {
 
         // Load and decode texture
+        TextureAtlas.Image image = decode(path);
+
+        // OpenGL stuff
+        int textureHandle = createTexture(image.width, image.height, image.pixels);
+
+        return new Texture(path, textureHandle, image.width, image.height);
+    }
+
+    /**
+     * Pack the images into one texture. The atlas also has a white texel for drawing shapes without an image
+     * @param paths Paths of the images
+     */
+    public static TextureAtlas loadAtlas(String... paths) throws IOException {
+
+        // Load and decode textures
+        ArrayList<TextureAtlas.Image> images = new ArrayList<TextureAtlas.Image>();
+        for(String path : paths) {
+            images.add(decode(path));
+        }
+        ByteBuffer whitePixel = ByteBuffer.allocateDirect(4);
+        whitePixel.putInt(0, 0xFFFFFFFF);
+        images.add(new TextureAtlas.Image(TextureAtlas.WHITE_TEXEL, 1, 1, whitePixel));
+
+        // Pack them
+        int[] size = TextureAtlas.pack(images, glGetInteger(GL_MAX_TEXTURE_SIZE));
+        int width = size[0];
+        int height = size[1];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4*width*height);
+        TextureAtlas.copyImages(images, buffer, width);
+
+        // OpenGL stuff
+        int textureHandle = createTexture(width, height, buffer);
+
+        // Regions of the images
+        HashMap<String, Texture> textures = new HashMap<String, Texture>();
+        for(TextureAtlas.Image image : images) {
+            textures.put(image.path, new Texture(
+                    image.path,
+                    textureHandle,
+                    image.width,
+                    image.height,
+                    (float) image.x / width,
+                    (float) image.y / height,
+                    (float) (image.x + image.width) / width,
+                    (float) (image.y + image.height) / height
+            ));
+        }
+        // The white texel is sampled from its middle
+        TextureAtlas.Image white = images.get(images.size() - 1);
+        float whiteU = (white.x + 0.5f) / width;
+        float whiteV = (white.y + 0.5f) / height;
+        textures.put(TextureAtlas.WHITE_TEXEL, new Texture(TextureAtlas.WHITE_TEXEL, textureHandle, 1, 1, whiteU, whiteV, whiteU, whiteV));
+
+        return new TextureAtlas(textureHandle, width, height, textures);
+    }
+
+    private static TextureAtlas.Image decode(String path) throws IOException {
+
         InputStream imageStream = TextureHelper.class.getResourceAsStream(path);
+        if(imageStream == null)
+            throw new IOException("Texture not found: "+path);
         PNGDecoder decoder = new PNGDecoder(imageStream);
-        ByteBuffer buffer = ByteBuffer.allocateDirect(4*decoder.getWidth()*decoder.getHeight());;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4*decoder.getWidth()*decoder.getHeight());
         decoder.decode(buffer, decoder.getWidth()*4, PNGDecoder.Format.RGBA);
         buffer.flip();
+        imageStream.close();
+
+        return new TextureAtlas.Image(path, decoder.getWidth(), decoder.getHeight(), buffer);
+    }
+
+    private static int createTexture(int width, int height, ByteBuffer pixels) {
 
-        // OpenGL stuff
         int textureHandle = glGenTextures();
         glBindTexture(GL_TEXTURE_2D, textureHandle);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, decoder.getWidth(), decoder.getHeight(), 0, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        imageStream.close();
 
-        return new Texture(path, textureHandle, decoder.getWidth(), decoder.getHeight());
+        return textureHandle;
     }
-}
\ No newline at end of file
+}